@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Shared setup for the data provider benchmarks.
+ */
+final class BenchmarkData {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates a pool for a fresh in-memory HSQLDB database. Each benchmark
+     * runs in its own forked JVM, so the database starts out empty.
+     */
+    static BasicDataSource newDataSource(String databaseName) {
+        return newDataSource(StorageMode.MEMORY, databaseName);
+    }
+
+    /**
+     * Creates a pool for a database in the given storage mode.
+     *
+     * @param database name of an in-memory database or path of the database
+     *                 files
+     */
+    static BasicDataSource newDataSource(StorageMode storageMode,
+            String database) {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setUrl(storageMode.getUrl(database));
+        dataSource.setUsername("SA");
+        dataSource.setPassword("");
+        dataSource.setPoolPreparedStatements(true);
+        dataSource.setMaxTotal(Runtime.getRuntime().availableProcessors());
+        return dataSource;
+    }
+
+    /**
+     * Inserts {@code rows} rows with JDBC batches in a single transaction.
+     */
+    static void insertRows(Connection connection, PreparedStatement statement,
+            int rows, RowBinder binder) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < rows; i++) {
+                binder.bind(i);
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Fetches the pages before {@code offset} one after another, as a user
+     * scrolling down would. In KEYSET mode the provider then knows the key
+     * of the row before {@code offset}, instead of skipping all rows before
+     * it on every fetch.
+     */
+    static <T, F> void scrollTo(AbstractJDBCDataProvider<T, F> dataProvider,
+            F filter, int offset, int limit) {
+        for (int start = 0; start < offset; start += limit) {
+            int pageLimit = Math.min(limit, offset - start);
+            dataProvider.fetch(new Query<>(start, pageLimit,
+                    Collections.emptyList(), null, filter)).count();
+        }
+    }
+
+    @FunctionalInterface
+    interface RowBinder {
+        void bind(int row) throws SQLException;
+    }
+}
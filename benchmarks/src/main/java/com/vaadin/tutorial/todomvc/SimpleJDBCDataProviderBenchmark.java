@@ -0,0 +1,132 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Fetch and size benchmarks for {@link SimpleJDBCDataProvider} over a plain
+ * one-column-key table.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SimpleJDBCDataProviderBenchmark {
+
+    static final int ROWS = 1_001_000;
+
+    @Param({ "0", "10000", "1000000" })
+    public int offset;
+
+    @Param({ "50", "500" })
+    public int limit;
+
+    @Param({ "OFFSET", "KEYSET" })
+    public AbstractJDBCDataProvider.PagingMode pagingMode;
+
+    private BasicDataSource dataSource;
+    private SimpleJDBCDataProvider<Integer> dataProvider;
+    private Query<Integer, Void> query;
+
+    @Setup
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkData.newDataSource("simplebenchmarkdb");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(
+                        "CREATE TABLE long_table (i INTEGER PRIMARY KEY, text VARCHAR(64))");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO long_table VALUES (?, ?)")) {
+                BenchmarkData.insertRows(connection, statement, ROWS, i -> {
+                    statement.setInt(1, i);
+                    statement.setString(2, "Row number " + i);
+                });
+            }
+        }
+        if (pagingMode == AbstractJDBCDataProvider.PagingMode.KEYSET) {
+            dataProvider = new SimpleJDBCDataProvider<>(dataSource,
+                    "SELECT i, text FROM long_table", "i",
+                    resultSet -> resultSet.getInt(1));
+        } else {
+            dataProvider = new SimpleJDBCDataProvider<>(dataSource,
+                    "SELECT i, text FROM long_table ORDER BY i",
+                    resultSet -> resultSet.getInt(1));
+        }
+        dataProvider.setPagingMode(pagingMode);
+        query = new Query<>(offset, limit, Collections.emptyList(), null,
+                null);
+        if (pagingMode == AbstractJDBCDataProvider.PagingMode.KEYSET) {
+            BenchmarkData.scrollTo(dataProvider, null, offset, limit);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        dataProvider.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void fetch(Blackhole blackhole) {
+        dataProvider.fetch(query).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void fetchConcurrent(Blackhole blackhole) {
+        dataProvider.fetch(query).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public int size() {
+        dataProvider.invalidateSizes();
+        return dataProvider.size(query);
+    }
+
+    @Benchmark
+    public int cachedSize() {
+        return dataProvider.size(query);
+    }
+}
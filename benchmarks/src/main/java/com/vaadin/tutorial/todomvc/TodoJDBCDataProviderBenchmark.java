@@ -0,0 +1,118 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Fetch and size benchmarks for {@link TodoJDBCDataProvider}. Every second
+ * todo is completed, so the filtered views still reach the deepest offset.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TodoJDBCDataProviderBenchmark {
+
+    static final int ROWS = 2_002_000;
+
+    @Param({ "0", "10000", "1000000" })
+    public int offset;
+
+    @Param({ "50", "500" })
+    public int limit;
+
+    @Param({ "ALL", "ACTIVE", "COMPLETED" })
+    public TaskFilter filter;
+
+    @Param({ "CURSOR", "OFFSET", "KEYSET" })
+    public AbstractJDBCDataProvider.PagingMode pagingMode;
+
+    private BasicDataSource dataSource;
+    private TodoJDBCDataProvider dataProvider;
+    private Query<Todo, TaskFilter> query;
+
+    @Setup
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkData.newDataSource("todobenchmarkdb");
+        try (Connection connection = dataSource.getConnection()) {
+            TodoModel.setupDatabase(connection);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO todo (text, completed) VALUES (?, ?)")) {
+                BenchmarkData.insertRows(connection, statement, ROWS, i -> {
+                    statement.setString(1, "Todo number " + i);
+                    statement.setBoolean(2, i % 2 == 1);
+                });
+            }
+        }
+        dataProvider = new TodoJDBCDataProvider(dataSource);
+        dataProvider.setPagingMode(pagingMode);
+        query = new Query<>(offset, limit, Collections.emptyList(), null,
+                filter);
+        if (pagingMode == AbstractJDBCDataProvider.PagingMode.KEYSET) {
+            BenchmarkData.scrollTo(dataProvider, filter, offset, limit);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        dataProvider.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void fetch(Blackhole blackhole) {
+        dataProvider.fetch(query).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void fetchConcurrent(Blackhole blackhole) {
+        dataProvider.fetch(query).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public int size() {
+        dataProvider.invalidateSize(filter);
+        return dataProvider.size(query);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk insert, update and delete of todos with the JDBC batches of
+ * {@link TodoModel#persistAll} and {@link TodoModel#dropAll}. Each
+ * invocation handles all rows in one transaction; the table is emptied and
+ * refilled before every invocation, outside of the measurement.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class TodoModelBatchBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int rows;
+
+    private BasicDataSource dataSource;
+    private TodoModel model;
+    private List<Todo> newTodos;
+    private List<Todo> storedTodos;
+
+    @Setup
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkData.newDataSource("todobatchdb");
+        try (Connection connection = dataSource.getConnection()) {
+            TodoModel.setupDatabase(connection);
+        }
+        model = new TodoModel(dataSource);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM todo");
+        }
+        model.getDataProvider().invalidateSizes();
+        newTodos = todos("New");
+        storedTodos = todos("Stored");
+        model.persistAll(storedTodos);
+        storedTodos.forEach(todo -> todo.setCompleted(!todo.isCompleted()));
+    }
+
+    private List<Todo> todos(String prefix) {
+        List<Todo> todos = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Todo todo = new Todo(prefix + " " + i);
+            todo.setCompleted(i % 4 == 0);
+            todos.add(todo);
+        }
+        return todos;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        model.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void insertAll() {
+        model.persistAll(newTodos);
+    }
+
+    @Benchmark
+    public void updateAll() {
+        model.persistAll(storedTodos);
+    }
+
+    @Benchmark
+    public void dropAll() {
+        model.dropAll(storedTodos);
+    }
+}
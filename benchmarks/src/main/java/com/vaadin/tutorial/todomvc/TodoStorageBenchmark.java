@@ -0,0 +1,143 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Compares the {@link StorageMode}s of the todo database: fetch and size
+ * latency of {@link TodoJDBCDataProvider}, and the heap retained by the
+ * loaded database, which is printed after setup.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TodoStorageBenchmark {
+
+    static final int ROWS = 2_000_000;
+
+    @Param({ "MEMORY", "FILE" })
+    public StorageMode storageMode;
+
+    @Param({ "10000", "100000" })
+    public int cacheRows;
+
+    @Param({ "0", "1000000" })
+    public int offset;
+
+    @Param({ "50" })
+    public int limit;
+
+    private Path directory;
+    private BasicDataSource dataSource;
+    private TodoJDBCDataProvider dataProvider;
+    private Query<Todo, TaskFilter> query;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeap(memory);
+        directory = Files.createTempDirectory("todostorage");
+        dataSource = BenchmarkData.newDataSource(storageMode,
+                storageMode == StorageMode.MEMORY ? "todostoragedb"
+                        : directory.resolve("todo").toString());
+        try (Connection connection = dataSource.getConnection()) {
+            // Cache is limited by rows, the size limit is the HSQLDB maximum
+            storageMode.configure(connection, cacheRows, 4 * 1024 * 1024);
+            TodoModel.setupDatabase(connection);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO todo (text, completed) VALUES (?, ?)")) {
+                BenchmarkData.insertRows(connection, statement, ROWS, i -> {
+                    statement.setString(1, "Todo number " + i);
+                    statement.setBoolean(2, i % 2 == 1);
+                });
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CHECKPOINT");
+            }
+        }
+        dataProvider = new TodoJDBCDataProvider(dataSource);
+        query = new Query<>(offset, limit, Collections.emptyList(), null,
+                TaskFilter.ACTIVE);
+        System.out.printf("%nHeap retained by %s storage: %d MB%n",
+                storageMode, (usedHeap(memory) - heapBefore) >> 20);
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        dataProvider.close();
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        dataSource.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void fetch(Blackhole blackhole) {
+        dataProvider.fetch(query).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public int size() {
+        dataProvider.invalidateSize(TaskFilter.ACTIVE);
+        return dataProvider.size(query);
+    }
+}
@@ -0,0 +1,132 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import com.vaadin.data.provider.HierarchicalQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vaadin.example.treegrid.jdbc.pojo.Company;
+import org.vaadin.example.treegrid.jdbc.pojo.Department;
+import org.vaadin.example.treegrid.jdbc.pojo.NamedItem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link PeopleDataProvider}. The sample data is extended with
+ * one company whose only department holds {@link #DEPARTMENT_SIZE} people, so
+ * that children can be fetched at deep offsets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PeopleDataProviderBenchmark {
+
+    static final int DEPARTMENT_SIZE = 1_001_000;
+    private static final long BENCHMARK_ID = 1_000_000L;
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"0", "10000", "1000000"})
+    public int offset;
+
+    @Param({"50", "500"})
+    public int limit;
+
+    private PeopleDataProvider dataProvider;
+    private HierarchicalQuery<NamedItem, Void> rootQuery;
+    private HierarchicalQuery<NamedItem, Void> companyQuery;
+    private HierarchicalQuery<NamedItem, Void> departmentQuery;
+
+    @Setup
+    public void setUp() throws SQLException {
+        try (Connection connection = DBEngine.getDataSource().getConnection()) {
+            insertBenchmarkDepartment(connection);
+        }
+        Company company = new Company(BENCHMARK_ID, "Benchmark", "inbox@benchmark.com");
+        Department department = new Department(BENCHMARK_ID, BENCHMARK_ID, "Benchmark");
+        dataProvider = new PeopleDataProvider();
+        rootQuery = new HierarchicalQuery<>(0, limit, Collections.emptyList(), null, null, null);
+        companyQuery = new HierarchicalQuery<>(0, limit, Collections.emptyList(), null, null, company);
+        departmentQuery = new HierarchicalQuery<>(offset, limit, Collections.emptyList(), null, null, department);
+    }
+
+    private static void insertBenchmarkDepartment(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO people (id, department_id, first_name, last_name, email, gender) VALUES (?, ?, ?, ?, ?, ?)")) {
+            statement.executeUpdate("INSERT INTO company VALUES (" + BENCHMARK_ID + ", 'Benchmark', 'inbox@benchmark.com')");
+            statement.executeUpdate("INSERT INTO department VALUES (" + BENCHMARK_ID + ", " + BENCHMARK_ID + ", 'Benchmark')");
+            for (int i = 0; i < DEPARTMENT_SIZE; i++) {
+                insert.setLong(1, BENCHMARK_ID + i);
+                insert.setLong(2, BENCHMARK_ID);
+                insert.setString(3, "First" + i);
+                insert.setString(4, "Last" + i);
+                insert.setString(5, "person" + i + "@benchmark.com");
+                insert.setString(6, i % 2 == 0 ? "Female" : "Male");
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Benchmark
+    public void fetchRoots(Blackhole blackhole) {
+        dataProvider.fetchChildren(rootQuery).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void fetchDepartments(Blackhole blackhole) {
+        dataProvider.fetchChildren(companyQuery).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void fetchPeople(Blackhole blackhole) {
+        dataProvider.fetchChildren(departmentQuery).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void fetchPeopleConcurrent(Blackhole blackhole) {
+        dataProvider.fetchChildren(departmentQuery).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public int childCount() {
+        // Counts the people of every department of the company
+        dataProvider.invalidateChildCount(departmentQuery.getParent());
+        return dataProvider.getChildCount(departmentQuery);
+    }
+
+    @Benchmark
+    public int childCountCached() {
+        return dataProvider.getChildCount(departmentQuery);
+    }
+
+    @Benchmark
+    public boolean hasChildren() {
+        return dataProvider.hasChildren(departmentQuery.getParent());
+    }
+}
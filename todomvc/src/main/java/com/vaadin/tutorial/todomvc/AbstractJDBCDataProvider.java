@@ -17,19 +17,45 @@ package com.vaadin.tutorial.todomvc;
 
 import com.vaadin.data.provider.AbstractBackEndDataProvider;
 import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Vaadin DataProvider over pure JDBC, base class.
+ * <p>
+ * Every query borrows a connection from the data source and returns it
+ * afterwards, so the provider is safe to use from concurrent threads.
+ * Statements are prepared anew for every query, use a data source which pools
+ * prepared statements, e.g. {@code BasicDataSource} with
+ * {@code poolPreparedStatements} enabled.
  *
  * @param <T> data transfer object. Might be POJO or Map.
  * @author Vaadin Ltd
@@ -39,14 +65,95 @@ public abstract class AbstractJDBCDataProvider<T, F>
         extends AbstractBackEndDataProvider<T, F> implements AutoCloseable {
     private static final Logger LOGGER = Logger
             .getLogger(AbstractJDBCDataProvider.class.getName());
-    protected final java.sql.Connection connection;
+
+    /**
+     * Default memory budget of the rows buffered by one fetch, in bytes.
+     */
+    public static final int DEFAULT_FETCH_BUFFER_SIZE = 1 << 20;
+
+    /*
+     * Fetch size while the row width is not known yet
+     */
+    private static final int DEFAULT_FETCH_ROWS = 1000;
+
+    /*
+     * Weight of the latest page in the average page size
+     */
+    private static final double PAGE_ROWS_WEIGHT = 0.25;
+
+    /*
+     * Headroom over the average page size, so that a slightly larger page
+     * still needs one round trip
+     */
+    private static final double PAGE_ROWS_HEADROOM = 1.25;
+
+    /*
+     * Width assumed for columns of unbounded size, e.g. LOBs
+     */
+    private static final int MAX_COLUMN_WIDTH = 4096;
+
+    /*
+     * Read-ahead windows kept per provider
+     */
+    private static final int PREFETCH_CACHED_PAGES = 16;
+
+    /*
+     * Longest wait for a read-ahead window still being read before the rows
+     * are queried directly
+     */
+    private static final long PREFETCH_WAIT_MILLIS = 100;
+    protected final DataSource dataSource;
     protected final DataRetriever<T> jdbcReader;
 
-    private int cachedSize = -1;
+    /*
+     * Row count by filter key. Writes are guarded by the map itself, so that
+     * a count is only stored if no delta arrived while it was queried.
+     */
+    private final Map<Object, CachedSize> sizeCache = new ConcurrentHashMap<>();
+
+    /*
+     * Incremented by every delta or invalidation of cached row counts
+     */
+    private long sizeVersion;
+
+    private volatile boolean sizeCacheClearedOnRefresh = true;
+
+    private volatile long sizeCacheTtlNanos;
+
+    private volatile PagingMode pagingMode = PagingMode.CURSOR;
+
+    private volatile boolean lazyFetch;
 
-    public AbstractJDBCDataProvider(Connection connection,
+    private volatile int fetchSize;
+
+    private volatile int fetchBufferSize = DEFAULT_FETCH_BUFFER_SIZE;
+
+    /*
+     * Adaptive fetch size state. Updates race benignly, they only steer a
+     * hint.
+     */
+    private volatile double averagePageRows = Double.NaN;
+    private volatile int rowWidth;
+
+    private volatile int prefetchRows;
+
+    private volatile int lastOffset;
+
+    private final PageCache<T> pageCache = new PageCache<>(
+            PREFETCH_CACHED_PAGES);
+
+    private final DataProviderMetrics metrics = new DataProviderMetrics();
+
+    /*
+     * KEYSET mode only: for every filter, the key of the last row of each
+     * fetched page, indexed by the offset of the row which follows it.
+     */
+    private final Map<Object, NavigableMap<Integer, Object>> pageKeys =
+            new ConcurrentHashMap<>();
+
+    public AbstractJDBCDataProvider(DataSource dataSource,
                                     DataRetriever<T> jdbcReader) {
-        this.connection = Objects.requireNonNull(connection);
+        this.dataSource = Objects.requireNonNull(dataSource);
         this.jdbcReader = Objects.requireNonNull(jdbcReader);
     }
 
@@ -61,15 +168,44 @@ public abstract class AbstractJDBCDataProvider<T, F>
         }
     }
 
+    /**
+     * Called before every size or row query, e.g. to write pending changes
+     * the query should see.
+     */
+    protected void beforeQuery() {
+    }
+
     @Override
     protected int sizeInBackEnd(Query<T, F> query) {
-        if (cachedSize < 0) {
-            try (ResultSet resultSet = rowCountStatement(query)) {
+        beforeQuery();
+        Object filterKey = filterKey(query.getFilter().orElse(null));
+        Integer cachedSize = cachedSize(filterKey);
+        if (cachedSize != null) {
+            metrics.sizeCacheHit();
+        } else {
+            long version;
+            synchronized (sizeCache) {
+                version = sizeVersion;
+            }
+            long start = System.nanoTime();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = rowCountStatement(connection,
+                         query);
+                 ResultSet resultSet = statement.executeQuery()) {
                 resultSet.next();
                 cachedSize = resultSet.getInt(1);
             } catch (SQLException e) {
                 throw new RuntimeException("Size SQL query failed", e);
             }
+            metrics.sizeQueried(System.nanoTime() - start);
+            synchronized (sizeCache) {
+                // A delta which arrived meanwhile may or may not be included
+                // in the count, so it is not cached then
+                if (version == sizeVersion) {
+                    sizeCache.put(filterKey,
+                            new CachedSize(cachedSize, System.nanoTime()));
+                }
+            }
         }
         int size = cachedSize - query.getOffset();
         if (size < 0) {
@@ -78,36 +214,649 @@ public abstract class AbstractJDBCDataProvider<T, F>
         return Math.min(size, query.getLimit());
     }
 
-    protected abstract ResultSet rowCountStatement(Query<T, F> query) throws SQLException;
+    /**
+     * Drops the cached row count for the filter value.
+     */
+    public void invalidateSize(F filter) {
+        synchronized (sizeCache) {
+            sizeVersion++;
+            sizeCache.remove(filterKey(filter));
+        }
+    }
+
+    /**
+     * Changes the cached row count for the filter value by a known delta, if
+     * the count is cached. The delta must be applied after the change is
+     * committed. Counts being queried meanwhile are not cached.
+     */
+    public void adjustSize(F filter, int delta) {
+        synchronized (sizeCache) {
+            sizeVersion++;
+            sizeCache.computeIfPresent(filterKey(filter),
+                    (filterKey, size) -> new CachedSize(size.size + delta,
+                            size.countedAt));
+        }
+    }
+
+    /**
+     * Drops cached row counts for all filter values.
+     */
+    public void invalidateSizes() {
+        synchronized (sizeCache) {
+            sizeVersion++;
+            sizeCache.clear();
+        }
+    }
+
+    /**
+     * @return cached row count, null if not cached or expired
+     */
+    private Integer cachedSize(Object filterKey) {
+        CachedSize cached = sizeCache.get(filterKey);
+        if (cached == null) {
+            return null;
+        }
+        long ttl = sizeCacheTtlNanos;
+        if (ttl > 0 && System.nanoTime() - cached.countedAt > ttl) {
+            synchronized (sizeCache) {
+                sizeCache.remove(filterKey, cached);
+            }
+            return null;
+        }
+        return cached.size;
+    }
+
+    public boolean isSizeCacheClearedOnRefresh() {
+        return sizeCacheClearedOnRefresh;
+    }
+
+    /**
+     * By default {@link #refreshAll()} drops all cached row counts. If the
+     * owner of the provider invalidates counts precisely with
+     * {@link #invalidateSize(Object)}, that can be switched off, so that
+     * refreshing after e.g. a filter change does not re-count rows.
+     */
+    public void setSizeCacheClearedOnRefresh(
+            boolean sizeCacheClearedOnRefresh) {
+        this.sizeCacheClearedOnRefresh = sizeCacheClearedOnRefresh;
+    }
+
+    public long getSizeCacheTtl(TimeUnit unit) {
+        return unit.convert(sizeCacheTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Row counts are queried again at the latest after the given time, even
+     * if deltas kept them up to date. That bounds the drift if a change is
+     * missed, e.g. one made by another application. Zero, the default, keeps
+     * counts until they are invalidated.
+     */
+    public void setSizeCacheTtl(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException(
+                    "Negative time to live: " + ttl);
+        }
+        this.sizeCacheTtlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Statement returning the row count of the query, parameters bound.
+     */
+    protected abstract PreparedStatement rowCountStatement(
+            Connection connection, Query<T, F> query) throws SQLException;
+
+    /**
+     * Statement returning all rows of the query, parameters bound.
+     */
+    protected abstract PreparedStatement resultSetStatement(
+            Connection connection, Query<T, F> query) throws SQLException;
+
+    /**
+     * Statement returning rows {@code [offset, offset + limit)} of the
+     * query, with the row window applied by the database.
+     * <p>
+     * Default implementation is not supported, in that case rows are skipped
+     * on the JDBC cursor.
+     */
+    protected PreparedStatement pagedResultSetStatement(Connection connection,
+            Query<T, F> query) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Paged query");
+    }
 
-    protected abstract ResultSet resultSetStatement(Query<T, F> query) throws SQLException;
+    /**
+     * Statement returning up to {@code query.getLimit()} rows ordered by the
+     * row key, skipping {@code skip} rows with key greater than
+     * {@code lastKey}. If {@code lastKey} is {@code null}, rows are counted
+     * from the very first one.
+     * <p>
+     * Default implementation is not supported, in that case
+     * {@link #pagedResultSetStatement(Connection, Query)} is used.
+     */
+    protected PreparedStatement keysetResultSetStatement(
+            Connection connection, Query<T, F> query, Object lastKey,
+            int skip) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Keyset query");
+    }
+
+    /**
+     * Reads the unique key of the current row, used in KEYSET mode only.
+     */
+    protected Object readKey(ResultSet resultSet) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Row key");
+    }
+
+    /**
+     * Key to separate cached state of different filter values.
+     */
+    protected Object filterKey(F filter) {
+        return Optional.ofNullable(filter);
+    }
 
     @Override
     protected Stream<T> fetchFromBackEnd(Query<T, F> query) {
-        try (ResultSet resultSet = resultSetStatement(query)){
-            try {
-                resultSet.absolute(query.getOffset());
-            } catch (SQLFeatureNotSupportedException e) {
-                for (int i = query.getOffset(); i > 0; i--) {
-                    resultSet.next();
-                }
+        beforeQuery();
+        int rowsAhead = prefetchRows;
+        if (rowsAhead > 0) {
+            Object queryKey = queryKey(query);
+            List<T> cached = pageCache.get(queryKey, query.getOffset(),
+                    query.getLimit(), PREFETCH_WAIT_MILLIS);
+            prefetch(query, queryKey, rowsAhead);
+            if (cached != null) {
+                metrics.prefetchHit();
+                return cached.stream();
             }
+        }
+        long start = System.nanoTime();
+        Cursor cursor = openCursor(query);
+        if (lazyFetch) {
+            metrics.fetchQueried(System.nanoTime() - start);
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        }
+        try (Cursor c = cursor) {
             Stream.Builder<T> builder = Stream.builder();
-            for(int i =0; i < query.getLimit() && resultSet.next();i++) {
-                builder.add(jdbcReader.readRow(resultSet));
-            }
+            c.forEachRemaining(builder);
+            metrics.fetchQueried(System.nanoTime() - start);
             return builder.build();
-        } catch (SQLException e) {
+        }
+    }
+
+    /**
+     * Reads the window next to the query in the scroll direction into the
+     * page cache, in the background.
+     */
+    private void prefetch(Query<T, F> query, Object queryKey, int rowsAhead) {
+        int offset = query.getOffset();
+        boolean backwards = offset < lastOffset;
+        lastOffset = offset;
+        int start;
+        int limit;
+        if (backwards) {
+            start = Math.max(0, offset - rowsAhead);
+            limit = offset - start;
+        } else {
+            long end = (long) offset + query.getLimit();
+            Integer size = cachedSize(
+                    filterKey(query.getFilter().orElse(null)));
+            if (end >= Integer.MAX_VALUE || size != null && end >= size) {
+                return;
+            }
+            start = (int) end;
+            limit = rowsAhead;
+        }
+        if (limit <= 0) {
+            return;
+        }
+        CompletableFuture<List<T>> rows = pageCache.reserve(queryKey, start,
+                limit);
+        if (rows == null) {
+            return;
+        }
+        Query<T, F> ahead = new Query<>(start, limit, query.getSortOrders(),
+                query.getInMemorySorting(), query.getFilter().orElse(null));
+        try {
+            PrefetchExecutor.INSTANCE.execute(() -> {
+                if (rows.isCancelled()) {
+                    // A fetch stopped waiting and queried the rows itself
+                    return;
+                }
+                try (Cursor cursor = openCursor(ahead)) {
+                    List<T> page = new ArrayList<>(limit);
+                    cursor.forEachRemaining(page::add);
+                    rows.complete(Collections.unmodifiableList(page));
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Prefetch query failed", e);
+                    pageCache.remove(rows);
+                    rows.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Read-ahead is best effort, skip it when the executor is busy
+            pageCache.remove(rows);
+            rows.cancel(false);
+        }
+    }
+
+    /*
+     * Key of the filter and sort orders of the query
+     */
+    private Object queryKey(Query<T, F> query) {
+        List<Object> key = new ArrayList<>();
+        key.add(filterKey(query.getFilter().orElse(null)));
+        if (query.getSortOrders() != null) {
+            for (QuerySortOrder sortOrder : query.getSortOrders()) {
+                key.add(sortOrder.getSorted());
+                key.add(sortOrder.getDirection());
+            }
+        }
+        return key;
+    }
+
+    private Cursor openCursor(Query<T, F> query) {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            switch (pagingMode) {
+            case KEYSET:
+                return openKeysetCursor(connection, query);
+            case OFFSET:
+                return openOffsetCursor(connection, query);
+            default:
+                return openSkippingCursor(connection, query);
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (connection != null) {
+                closeResources(Collections.singletonList(connection));
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
             throw new RuntimeException("Data SQL query failed", e);
         }
     }
 
+    private Cursor openKeysetCursor(Connection connection, Query<T, F> query)
+            throws SQLException {
+        if (isSorted(query)) {
+            // Page keys follow the key order only
+            return openOffsetCursor(connection, query);
+        }
+        NavigableMap<Integer, Object> keys = pageKeys.computeIfAbsent(
+                filterKey(query.getFilter().orElse(null)),
+                filter -> new ConcurrentSkipListMap<>());
+        Map.Entry<Integer, Object> known = keys.floorEntry(query.getOffset());
+        Object lastKey = known == null ? null : known.getValue();
+        int skip = known == null ? query.getOffset()
+                : query.getOffset() - known.getKey();
+        PreparedStatement statement;
+        try {
+            statement = keysetResultSetStatement(connection, query, lastKey,
+                    skip);
+        } catch (SQLFeatureNotSupportedException e) {
+            return openOffsetCursor(connection, query);
+        }
+        return new Cursor(connection, statement, query, 0, keys);
+    }
+
+    private Cursor openOffsetCursor(Connection connection, Query<T, F> query)
+            throws SQLException {
+        PreparedStatement statement;
+        try {
+            statement = pagedResultSetStatement(connection, query);
+        } catch (SQLFeatureNotSupportedException e) {
+            return openSkippingCursor(connection, query);
+        }
+        return new Cursor(connection, statement, query, 0, null);
+    }
+
+    private Cursor openSkippingCursor(Connection connection,
+            Query<T, F> query) throws SQLException {
+        return new Cursor(connection, resultSetStatement(connection, query),
+                query, query.getOffset(), null);
+    }
+
+    protected static boolean isSorted(Query<?, ?> query) {
+        return query.getSortOrders() != null
+                && !query.getSortOrders().isEmpty();
+    }
+
+    /**
+     * Counters and latencies of this provider. Call
+     * {@link DataProviderMetrics#register(String)} to publish them over JMX.
+     */
+    public DataProviderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unregisters the metrics. Statements and connections are returned to
+     * the data source after every query, there is nothing else to release.
+     */
+    @Override
+    public void close() throws Exception {
+        metrics.unregister();
+    }
+
     @Override
     public void refreshAll() {
-        cachedSize = -1;
+        if (sizeCacheClearedOnRefresh) {
+            invalidateSizes();
+        }
+        pageKeys.clear();
+        pageCache.clear();
         super.refreshAll();
     }
 
+    /**
+     * Also drops read-ahead windows, which might hold a stale copy of the
+     * item.
+     */
+    @Override
+    public void refreshItem(T item) {
+        pageCache.clear();
+        super.refreshItem(item);
+    }
+
+    public int getPrefetchRows() {
+        return prefetchRows;
+    }
+
+    /**
+     * Number of rows to read ahead in the scroll direction after every
+     * fetch, 0 (the default) to switch read-ahead off. Windows read ahead
+     * are served from a small per-provider cache, which is cleared by
+     * {@link #refreshAll()}. A shared background executor with a few
+     * threads runs the reads, and skips them when it is saturated. A fetch
+     * waits for a window being read for at most 100 ms, then cancels the
+     * read and queries the rows directly.
+     */
+    public void setPrefetchRows(int prefetchRows) {
+        if (prefetchRows < 0) {
+            throw new IllegalArgumentException("Negative prefetch rows");
+        }
+        this.prefetchRows = prefetchRows;
+        if (prefetchRows == 0) {
+            pageCache.clear();
+        }
+    }
+
+    public boolean isLazyFetch() {
+        return lazyFetch;
+    }
+
+    /**
+     * In lazy mode {@link #fetch(Query)} returns a stream over the live
+     * {@link ResultSet}: rows are read and mapped only when consumed. The
+     * connection is held until the stream is exhausted or closed, so a
+     * stream which is not consumed to the end must be closed.
+     */
+    public void setLazyFetch(boolean lazyFetch) {
+        this.lazyFetch = lazyFetch;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Fixed JDBC fetch size hint for data queries, or 0 (the default) to
+     * adapt it: the fetch size then follows the average number of rows read
+     * per query, limited by the fetch buffer size over the row width. It is
+     * never set above the query limit.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Negative fetch size");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    public int getFetchBufferSize() {
+        return fetchBufferSize;
+    }
+
+    /**
+     * Memory budget in bytes for the rows of one adaptive fetch.
+     */
+    public void setFetchBufferSize(int fetchBufferSize) {
+        if (fetchBufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Fetch buffer size must be positive");
+        }
+        this.fetchBufferSize = fetchBufferSize;
+    }
+
+    /**
+     * Fetch size hint set on the latest data query, 0 before the first one.
+     */
+    public int getLastFetchSize() {
+        return metrics.getLastFetchSize();
+    }
+
+    /**
+     * Moving average of the rows read per data query, {@code NaN} before
+     * the first one.
+     */
+    public double getAveragePageRows() {
+        return averagePageRows;
+    }
+
+    /**
+     * Row width estimated from the result set metadata, in bytes, 0 before
+     * the first data query.
+     */
+    public int getRowWidth() {
+        return rowWidth;
+    }
+
+    private int chooseFetchSize(int limit) {
+        int size = fetchSize;
+        if (size == 0) {
+            double pageRows = averagePageRows;
+            size = Double.isNaN(pageRows) ? limit
+                    : (int) Math.ceil(pageRows * PAGE_ROWS_HEADROOM);
+            int width = rowWidth;
+            size = Math.min(size, width > 0
+                    ? Math.max(1, fetchBufferSize / width)
+                    : DEFAULT_FETCH_ROWS);
+        }
+        size = Math.max(1, Math.min(size, limit));
+        metrics.fetchSizeChosen(size);
+        return size;
+    }
+
+    private void observePage(int rows) {
+        double pageRows = averagePageRows;
+        averagePageRows = Double.isNaN(pageRows) ? rows
+                : pageRows + PAGE_ROWS_WEIGHT * (rows - pageRows);
+    }
+
+    private void observeRowWidth(ResultSetMetaData metaData)
+            throws SQLException {
+        int width = 0;
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            int displaySize = metaData.getColumnDisplaySize(column);
+            width += displaySize <= 0 ? MAX_COLUMN_WIDTH
+                    : Math.min(displaySize, MAX_COLUMN_WIDTH);
+        }
+        rowWidth = Math.max(1, width);
+    }
+
+    public PagingMode getPagingMode() {
+        return pagingMode;
+    }
+
+    /**
+     * Selects how the requested window of rows is located in the back end.
+     * Modes not supported by the subclass fall back to the next simpler one:
+     * KEYSET to OFFSET to CURSOR.
+     */
+    public void setPagingMode(PagingMode pagingMode) {
+        this.pagingMode = Objects.requireNonNull(pagingMode);
+        pageKeys.clear();
+    }
+
+    /**
+     * Row count and the time it was queried at.
+     */
+    private static class CachedSize {
+        final int size;
+        final long countedAt;
+
+        CachedSize(int size, long countedAt) {
+            this.size = size;
+            this.countedAt = countedAt;
+        }
+    }
+
+    /**
+     * Initialization-on-demand of the executor shared by all providers for
+     * read-ahead.
+     */
+    private static class PrefetchExecutor {
+        private static final int THREADS = 4;
+        private static final int QUEUE_SIZE = 64;
+
+        static final ThreadPoolExecutor INSTANCE = createExecutor();
+
+        private static ThreadPoolExecutor createExecutor() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS,
+                    THREADS, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+                        Thread thread = new Thread(runnable, "jdbc-prefetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Strategies to locate a window of rows.
+     */
+    public enum PagingMode {
+        /**
+         * The full query is executed, leading rows are skipped on the JDBC
+         * cursor.
+         */
+        CURSOR,
+        /**
+         * The database skips leading rows, using LIMIT/OFFSET or equivalent.
+         */
+        OFFSET,
+        /**
+         * Rows are sought by key: the provider remembers the last key of each
+         * fetched page, so scrolling forward costs the same at any depth.
+         * Rows must be ordered by a unique key. Sorted queries are paged in
+         * OFFSET mode.
+         */
+        KEYSET
+    }
+
+    /**
+     * Open result set of a data query, read row by row. Releases the result
+     * set, the statement and the connection when exhausted or closed.
+     */
+    private final class Cursor extends Spliterators.AbstractSpliterator<T>
+            implements AutoCloseable {
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final int offset;
+        private final NavigableMap<Integer, Object> keys;
+        private int remaining;
+        private int count;
+        private Object lastKey;
+        private boolean closed;
+
+        /**
+         * @param skip rows to skip on the cursor
+         * @param keys page keys to update, KEYSET mode only
+         */
+        Cursor(Connection connection, PreparedStatement statement,
+                Query<T, F> query, int skip,
+                NavigableMap<Integer, Object> keys) throws SQLException {
+            super(query.getLimit(), ORDERED | NONNULL);
+            this.connection = connection;
+            this.statement = statement;
+            this.offset = query.getOffset();
+            this.keys = keys;
+            this.remaining = query.getLimit();
+            try {
+                statement.setFetchSize(chooseFetchSize(remaining));
+                resultSet = statement.executeQuery();
+                if (rowWidth == 0) {
+                    observeRowWidth(resultSet.getMetaData());
+                }
+            } catch (SQLException | RuntimeException e) {
+                closeResources(Collections.singletonList(statement));
+                throw e;
+            }
+            if (skip > 0) {
+                try {
+                    skipRows(skip);
+                    metrics.rowsSkipped(skip);
+                } catch (SQLException | RuntimeException e) {
+                    closeResources(Arrays.asList(resultSet, statement));
+                    throw e;
+                }
+            }
+        }
+
+        private void skipRows(int skip) throws SQLException {
+            try {
+                resultSet.absolute(skip);
+            } catch (SQLFeatureNotSupportedException e) {
+                for (int i = skip; i > 0; i--) {
+                    resultSet.next();
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (remaining <= 0 || !resultSet.next()) {
+                    close();
+                    return false;
+                }
+                T row = jdbcReader.readRow(resultSet);
+                if (keys != null) {
+                    lastKey = readKey(resultSet);
+                }
+                count++;
+                remaining--;
+                action.accept(row);
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new RuntimeException("Data SQL query failed", e);
+            } catch (RuntimeException | Error e) {
+                // E.g. a failing row reader or consumer, the stream might
+                // never be closed
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            observePage(count);
+            metrics.rowsRead(count);
+            if (keys != null && count > 0) {
+                keys.put(offset + count, lastKey);
+            }
+            closeResources(Arrays.asList(resultSet, statement, connection));
+        }
+    }
+
     @FunctionalInterface
     public interface DataRetriever<T> {
         T readRow(ResultSet resultSet) throws SQLException;
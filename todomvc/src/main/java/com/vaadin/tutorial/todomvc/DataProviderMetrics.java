@@ -0,0 +1,226 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of one {@link AbstractJDBCDataProvider}.
+ * Recording is lock-free and cheap enough for every query. Metrics can be
+ * published to the platform MBean server under a name identifying the
+ * provider, e.g. the view it feeds.
+ *
+ * @author Vaadin Ltd
+ */
+public class DataProviderMetrics implements DataProviderMetricsMXBean {
+    private static final Logger LOGGER = Logger
+            .getLogger(DataProviderMetrics.class.getName());
+
+    /**
+     * JMX domain of registered metrics.
+     */
+    public static final String DOMAIN = "com.vaadin.tutorial.todomvc";
+
+    private final LongAdder sizeRequests = new LongAdder();
+    private final LongAdder sizeCacheHits = new LongAdder();
+    private final LatencyHistogram sizeLatency = new LatencyHistogram();
+    private final LongAdder fetchRequests = new LongAdder();
+    private final LongAdder prefetchHits = new LongAdder();
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsSkipped = new LongAdder();
+    private volatile int lastFetchSize;
+
+    private ObjectName objectName;
+
+    void sizeCacheHit() {
+        sizeRequests.increment();
+        sizeCacheHits.increment();
+    }
+
+    void sizeQueried(long nanos) {
+        sizeRequests.increment();
+        sizeLatency.record(nanos);
+    }
+
+    void prefetchHit() {
+        fetchRequests.increment();
+        prefetchHits.increment();
+    }
+
+    void fetchQueried(long nanos) {
+        fetchRequests.increment();
+        fetchLatency.record(nanos);
+    }
+
+    void rowsRead(int rows) {
+        rowsRead.add(rows);
+    }
+
+    void rowsSkipped(int rows) {
+        rowsSkipped.add(rows);
+    }
+
+    void fetchSizeChosen(int fetchSize) {
+        lastFetchSize = fetchSize;
+    }
+
+    /**
+     * Publishes the metrics to the platform MBean server, replacing any
+     * earlier registration of this instance.
+     *
+     * @param name identifies the provider, e.g. the view it feeds
+     * @return false if the name is taken or JMX is not available
+     */
+    public synchronized boolean register(String name) {
+        unregister();
+        try {
+            ObjectName newName = new ObjectName(DOMAIN
+                    + ":type=DataProvider,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    newName);
+            objectName = newName;
+            return true;
+        } catch (JMException | SecurityException e) {
+            LOGGER.log(Level.WARNING,
+                    "Data provider metrics were not registered as " + name,
+                    e);
+            return false;
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Data provider metrics "
+                    + objectName + " were not unregistered", e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return the registered JMX name, or {@code null}
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public long getSizeRequests() {
+        return sizeRequests.sum();
+    }
+
+    @Override
+    public long getSizeCacheHits() {
+        return sizeCacheHits.sum();
+    }
+
+    @Override
+    public long getSizeLatencyMean() {
+        return micros(sizeLatency.getMean());
+    }
+
+    @Override
+    public long getSizeLatency50thPercentile() {
+        return micros(sizeLatency.getPercentile(50));
+    }
+
+    @Override
+    public long getSizeLatency99thPercentile() {
+        return micros(sizeLatency.getPercentile(99));
+    }
+
+    @Override
+    public long getSizeLatencyMax() {
+        return micros(sizeLatency.getMax());
+    }
+
+    @Override
+    public long getFetchRequests() {
+        return fetchRequests.sum();
+    }
+
+    @Override
+    public long getPrefetchHits() {
+        return prefetchHits.sum();
+    }
+
+    @Override
+    public long getFetchLatencyMean() {
+        return micros(fetchLatency.getMean());
+    }
+
+    @Override
+    public long getFetchLatency50thPercentile() {
+        return micros(fetchLatency.getPercentile(50));
+    }
+
+    @Override
+    public long getFetchLatency99thPercentile() {
+        return micros(fetchLatency.getPercentile(99));
+    }
+
+    @Override
+    public long getFetchLatencyMax() {
+        return micros(fetchLatency.getMax());
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getRowsSkipped() {
+        return rowsSkipped.sum();
+    }
+
+    @Override
+    public int getLastFetchSize() {
+        return lastFetchSize;
+    }
+
+    @Override
+    public void reset() {
+        sizeRequests.reset();
+        sizeCacheHits.reset();
+        sizeLatency.reset();
+        fetchRequests.reset();
+        prefetchHits.reset();
+        fetchLatency.reset();
+        rowsRead.reset();
+        rowsSkipped.reset();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+/**
+ * JMX view of the {@link DataProviderMetrics} of one data provider.
+ * Latencies are in microseconds.
+ *
+ * @author Vaadin Ltd
+ */
+public interface DataProviderMetricsMXBean {
+
+    /**
+     * Row count requests, including those answered from the size cache.
+     */
+    long getSizeRequests();
+
+    long getSizeCacheHits();
+
+    long getSizeLatencyMean();
+
+    long getSizeLatency50thPercentile();
+
+    long getSizeLatency99thPercentile();
+
+    long getSizeLatencyMax();
+
+    /**
+     * Data requests, including those answered from read-ahead.
+     */
+    long getFetchRequests();
+
+    long getPrefetchHits();
+
+    long getFetchLatencyMean();
+
+    long getFetchLatency50thPercentile();
+
+    long getFetchLatency99thPercentile();
+
+    long getFetchLatencyMax();
+
+    /**
+     * Rows read from result sets and mapped.
+     */
+    long getRowsRead();
+
+    /**
+     * Rows skipped on the JDBC cursor to reach the requested offset.
+     */
+    long getRowsSkipped();
+
+    /**
+     * Fetch size hint of the latest data query.
+     */
+    int getLastFetchSize();
+
+    void reset();
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * HSQLDB dialect. The row window is the SQL:2008 OFFSET/FETCH clause, so the
+ * dialect is also used as a fallback for unknown databases.
+ *
+ * @author Vaadin Ltd
+ */
+public class HsqldbDialect implements SqlDialect {
+
+    @Override
+    public boolean supports(DatabaseMetaData metaData) throws SQLException {
+        return metaData.getDatabaseProductName().startsWith("HSQL");
+    }
+
+    @Override
+    public void appendWindow(StringBuilder sql) {
+        sql.append(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+    }
+
+    @Override
+    public int bindWindow(PreparedStatement statement, int index, int offset,
+            int limit) throws SQLException {
+        statement.setInt(index++, offset);
+        statement.setInt(index++, limit);
+        return index;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounded cache of row windows read ahead of the Grid. A window is cached
+ * while it is still being read, so a request for it waits for the read in
+ * progress instead of repeating the query, up to a time limit.
+ *
+ * @param <T> row type
+ * @author Vaadin Ltd
+ */
+class PageCache<T> {
+
+    private final int capacity;
+
+    /*
+     * Most recently used first
+     */
+    private final Deque<Page<T>> pages = new ArrayDeque<>();
+
+    PageCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Rows {@code [offset, offset + limit)} from a cached window, waiting
+     * for it to be read if necessary. A window which is not read within the
+     * wait time is cancelled and dropped, so that the caller queries the
+     * rows itself instead of waiting behind a slow or queued read.
+     *
+     * @param queryKey   key of the filter and sort orders of the query
+     * @param waitMillis maximum time to wait for a window being read
+     * @return the rows, or {@code null} if no window covers them, reading it
+     *         failed or did not finish in time
+     */
+    List<T> get(Object queryKey, int offset, int limit, long waitMillis) {
+        Page<T> page;
+        synchronized (pages) {
+            page = find(queryKey, offset, limit);
+            if (page == null) {
+                return null;
+            }
+            pages.remove(page);
+            pages.addFirst(page);
+        }
+        List<T> rows;
+        try {
+            rows = page.rows.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            remove(page.rows);
+            page.rows.cancel(false);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        int from = Math.min(offset - page.offset, rows.size());
+        int to = (int) Math.min((long) from + limit, rows.size());
+        return rows.subList(from, to);
+    }
+
+    /**
+     * Registers a window about to be read, unless one covering it is already
+     * cached.
+     *
+     * @return the future to complete with the rows, or {@code null} if the
+     *         window is already cached
+     */
+    CompletableFuture<List<T>> reserve(Object queryKey, int offset,
+            int limit) {
+        synchronized (pages) {
+            if (find(queryKey, offset, limit) != null) {
+                return null;
+            }
+            Page<T> page = new Page<>(queryKey, offset, limit);
+            pages.addFirst(page);
+            while (pages.size() > capacity) {
+                pages.removeLast();
+            }
+            return page.rows;
+        }
+    }
+
+    /**
+     * Drops a window which could not be read in time, or at all.
+     */
+    void remove(CompletableFuture<List<T>> rows) {
+        synchronized (pages) {
+            pages.removeIf(page -> page.rows == rows);
+        }
+    }
+
+    void clear() {
+        synchronized (pages) {
+            pages.clear();
+        }
+    }
+
+    private Page<T> find(Object queryKey, int offset, int limit) {
+        for (Iterator<Page<T>> i = pages.iterator(); i.hasNext();) {
+            Page<T> page = i.next();
+            if (page.rows.isCompletedExceptionally()) {
+                i.remove();
+            } else if (page.covers(queryKey, offset, limit)) {
+                return page;
+            }
+        }
+        return null;
+    }
+
+    private static final class Page<T> {
+        private final Object queryKey;
+        private final int offset;
+        private final int limit;
+        private final CompletableFuture<List<T>> rows = new CompletableFuture<>();
+
+        private Page(Object queryKey, int offset, int limit) {
+            this.queryKey = queryKey;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        private boolean covers(Object queryKey, int offset, int limit) {
+            if (!Objects.equals(this.queryKey, queryKey)
+                    || offset < this.offset) {
+                return false;
+            }
+            if (rows.isDone() && !rows.isCompletedExceptionally()
+                    && rows.join().size() < this.limit) {
+                // The window reached the end of data
+                return true;
+            }
+            return (long) offset + limit <= (long) this.offset + this.limit;
+        }
+    }
+}
@@ -19,12 +19,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
 
 /**
  * Vaadin DataProvider over pure JDBC. Filtering and sorting to be implemented
- * in subclasses.
+ * in subclasses. Statements are generated with
+ * {@link SelectStatementBuilder} in the {@link SqlDialect} of the database.
+ * <p>
+ * Sorting is pushed down to the database for the sort properties registered
+ * with {@link #setSortColumn(String, String)}, queries sorted by any other
+ * property are rejected.
  *
  * @author Vaadin Ltd
  */
@@ -32,27 +46,101 @@ import java.util.List;
 public abstract class PreparedJDBCDataProvider<T, F>
         extends AbstractJDBCDataProvider<T, F> {
 
-    protected List<PreparedStatement> statements = new ArrayList<>();
+    private static final Pattern COLUMN_NAME = Pattern
+            .compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    protected volatile SqlDialect dialect;
 
-    public PreparedJDBCDataProvider(Connection connection,
+    /*
+     * Sortable properties, sort property to column name
+     */
+    private final Map<String, String> sortColumns = new ConcurrentHashMap<>();
+
+    public PreparedJDBCDataProvider(DataSource dataSource,
             DataRetriever<T> jdbcReader) {
-        super(connection, jdbcReader);
+        super(dataSource, jdbcReader);
+        try (Connection connection = dataSource.getConnection()) {
+            dialect = SqlDialect.forConnection(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    @Override
-    public void close() throws Exception {
-        closeResources(statements);
+    public SqlDialect getDialect() {
+        return dialect;
     }
 
-    protected PreparedStatement openStatement(String sqlQuery) {
+    public void setDialect(SqlDialect dialect) {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Allows sorting by the property: its sort orders become ORDER BY the
+     * column.
+     *
+     * @param sortProperty sort property as set on e.g. a Grid column
+     * @param column       column name, optionally qualified
+     */
+    public void setSortColumn(String sortProperty, String column) {
+        Objects.requireNonNull(sortProperty);
+        if (!COLUMN_NAME.matcher(column).matches()) {
+            throw new IllegalArgumentException(
+                    "Not a column name: " + column);
+        }
+        sortColumns.put(sortProperty, column);
+    }
+
+    /**
+     * Appends ORDER BY for the sort orders of the query, followed by the key
+     * column unless already sorted by it, so that the row order is total.
+     *
+     * @param keyColumn unique column, or {@code null}
+     * @throws IllegalArgumentException if a sort property is not sortable
+     */
+    protected SelectStatementBuilder orderBy(SelectStatementBuilder select,
+            Query<T, F> query, String keyColumn) {
+        boolean keySorted = false;
+        List<QuerySortOrder> sortOrders = query.getSortOrders();
+        if (sortOrders != null) {
+            for (QuerySortOrder sortOrder : sortOrders) {
+                String column = sortColumns.get(sortOrder.getSorted());
+                if (column == null) {
+                    throw new IllegalArgumentException(
+                            "Not a sortable property: "
+                                    + sortOrder.getSorted());
+                }
+                keySorted |= column.equals(keyColumn);
+                select.orderBy(
+                        sortOrder.getDirection() == SortDirection.DESCENDING
+                                ? column + " DESC" : column);
+            }
+        }
+        if (keyColumn != null && !keySorted) {
+            select.orderBy(keyColumn);
+        }
+        return select;
+    }
+
+    protected PreparedStatement openStatement(Connection connection,
+            String sqlQuery) throws SQLException {
+        return connection.prepareStatement(sqlQuery,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /**
+     * Prepares the statement and binds its parameters.
+     */
+    protected PreparedStatement openStatement(Connection connection,
+            SelectStatementBuilder select) throws SQLException {
+        SqlDialect sqlDialect = dialect;
+        PreparedStatement statement = openStatement(connection,
+                select.toSql(sqlDialect));
         try {
-            PreparedStatement preparedStatement = connection.prepareStatement(
-                    sqlQuery, ResultSet.TYPE_FORWARD_ONLY,
-                    ResultSet.CONCUR_READ_ONLY);
-            statements.add(preparedStatement);
-            return preparedStatement;
+            select.bind(statement, sqlDialect);
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            statement.close();
+            throw e;
         }
+        return statement;
     }
 }
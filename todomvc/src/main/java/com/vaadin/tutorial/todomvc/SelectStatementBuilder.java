@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builder for SELECT statements: adds filter predicates, ordering and a row
+ * window to a base query. All values are bound as statement parameters.
+ *
+ * @author Vaadin Ltd
+ */
+public class SelectStatementBuilder {
+
+    private final String select;
+    private final List<String> predicates = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+    private final List<String> orderBy = new ArrayList<>();
+    private boolean windowed;
+    private int offset;
+    private int limit;
+
+    /**
+     * @param select base query, without WHERE and ORDER BY clauses if any
+     *               predicates or ordering are to be added
+     */
+    public SelectStatementBuilder(String select) {
+        this.select = select;
+    }
+
+    /**
+     * Adds a predicate, joined with AND to the others.
+     *
+     * @param predicate SQL predicate with {@code ?} placeholders
+     * @param values    values for the placeholders
+     */
+    public SelectStatementBuilder where(String predicate, Object... values) {
+        predicates.add(predicate);
+        Collections.addAll(parameters, values);
+        return this;
+    }
+
+    public SelectStatementBuilder orderBy(String expression) {
+        orderBy.add(expression);
+        return this;
+    }
+
+    /**
+     * Restricts the result to rows {@code [offset, offset + limit)}.
+     */
+    public SelectStatementBuilder window(int offset, int limit) {
+        this.windowed = true;
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    public String toSql(SqlDialect dialect) {
+        StringBuilder sql = new StringBuilder(select);
+        for (int i = 0; i < predicates.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(predicates.get(i));
+        }
+        for (int i = 0; i < orderBy.size(); i++) {
+            sql.append(i == 0 ? " ORDER BY " : ", ").append(orderBy.get(i));
+        }
+        if (windowed) {
+            dialect.appendWindow(sql);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Binds parameters to a statement prepared from
+     * {@link #toSql(SqlDialect)}.
+     */
+    public void bind(PreparedStatement statement, SqlDialect dialect)
+            throws SQLException {
+        int index = 1;
+        for (Object parameter : parameters) {
+            statement.setObject(index++, parameter);
+        }
+        if (windowed) {
+            dialect.bindWindow(statement, index, offset, limit);
+        }
+    }
+}
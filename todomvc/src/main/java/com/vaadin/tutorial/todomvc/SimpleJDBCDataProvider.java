@@ -21,10 +21,25 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import javax.sql.DataSource;
 
 /**
  * Vaadin DataProvider over pure JDBC. Only fixed SQL statements are supported,
- * no custom filtering or sorting.
+ * no custom filtering. The requested window of rows is appended to the
+ * statement, so the query should be a plain SELECT accepted by the
+ * {@link SqlDialect}, otherwise rows are skipped on the JDBC cursor. Sorted
+ * queries select from the statement as a subquery, ordered by the columns
+ * registered with {@link #setSortColumn(String, String)}.
+ * <p>
+ * With a key column the provider pages in {@link PagingMode#KEYSET} mode.
+ * Without one it keeps the {@link PagingMode#CURSOR} mode: every window
+ * reads the statement from its first row, so rows keep the order of a
+ * single execution even if the statement has no ORDER BY. Switch to
+ * {@link PagingMode#OFFSET} only for a statement with a unique ORDER BY,
+ * since separately executed windows of an unordered statement may overlap
+ * or miss rows. Given a key column, OFFSET windows are ordered by it.
  *
  * @author Vaadin Ltd
  */
@@ -32,29 +47,112 @@ import java.sql.SQLException;
 public class SimpleJDBCDataProvider<T>
         extends PreparedJDBCDataProvider<T, Void> {
 
-    protected final PreparedStatement resultSetStatement;
-    protected final PreparedStatement sizeStatement;
+    private final String sqlQuery;
+    private final String keyColumn;
+    private volatile boolean windowUnsupported;
+
+    public SimpleJDBCDataProvider(DataSource dataSource, String sqlQuery,
+                                  DataRetriever<T> jdbcReader) {
+        this(dataSource, sqlQuery, null, jdbcReader);
+    }
 
-    public SimpleJDBCDataProvider(Connection connection, String sqlQuery,
+    /**
+     * @param keyColumn unique column of the query, enables KEYSET paging mode.
+     *                  Rows are then ordered by that column.
+     */
+    public SimpleJDBCDataProvider(DataSource dataSource, String sqlQuery,
+                                  String keyColumn,
                                   DataRetriever<T> jdbcReader) {
-        super(connection, jdbcReader);
-        resultSetStatement = openStatement(sqlQuery);
+        super(dataSource, jdbcReader);
+        this.sqlQuery = sqlQuery;
+        this.keyColumn = keyColumn;
+        if (keyColumn != null) {
+            setPagingMode(PagingMode.KEYSET);
+        }
+    }
 
-        sizeStatement = openStatement(
+    @Override
+    protected PreparedStatement rowCountStatement(Connection connection,
+            Query<T, Void> query) throws SQLException {
+        return openStatement(connection,
                 "select count(*) from (" + sqlQuery + ")");
     }
 
     @Override
-    protected ResultSet rowCountStatement(Query<T, Void> query) throws SQLException {
-        assert query.getSortOrders() == null || query.getSortOrders().isEmpty();
-        return sizeStatement.executeQuery();
+    protected PreparedStatement resultSetStatement(Connection connection,
+            Query<T, Void> query) throws SQLException {
+        if (isSorted(query)) {
+            return openStatement(connection, sortedSelect(query));
+        }
+        return openStatement(connection, sqlQuery);
+    }
+
+    @Override
+    protected PreparedStatement pagedResultSetStatement(Connection connection,
+            Query<T, Void> query) throws SQLException {
+        if (windowUnsupported) {
+            return super.pagedResultSetStatement(connection, query);
+        }
+        SelectStatementBuilder select;
+        if (isSorted(query)) {
+            select = sortedSelect(query);
+        } else if (keyColumn != null) {
+            select = new SelectStatementBuilder(
+                    "SELECT * FROM (" + sqlQuery + ")").orderBy(keyColumn);
+        } else {
+            select = new SelectStatementBuilder(sqlQuery);
+        }
+        select.window(query.getOffset(), query.getLimit());
+        try {
+            return openStatement(connection, select);
+        } catch (SQLException e) {
+            // Not every query accepts a row window, e.g. set operations.
+            // Other failures, like a lost connection, must not disable
+            // windowed queries for good.
+            if (!isSyntaxError(e)) {
+                throw e;
+            }
+            windowUnsupported = true;
+            throw new SQLFeatureNotSupportedException(
+                    "Row window is not supported by the query", e);
+        }
+    }
+
+    /**
+     * Whether the database rejected the statement itself: SQLState class 42
+     * is a syntax error or access rule violation.
+     */
+    private static boolean isSyntaxError(SQLException e) {
+        return e instanceof SQLFeatureNotSupportedException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("42"));
+    }
+
+    @Override
+    protected PreparedStatement keysetResultSetStatement(
+            Connection connection, Query<T, Void> query, Object lastKey,
+            int skip) throws SQLException {
+        if (keyColumn == null) {
+            return super.keysetResultSetStatement(connection, query, lastKey,
+                    skip);
+        }
+        SelectStatementBuilder select = new SelectStatementBuilder(
+                "SELECT * FROM (" + sqlQuery + ")");
+        if (lastKey != null) {
+            select.where(keyColumn + " > ?", lastKey);
+        }
+        return openStatement(connection,
+                select.orderBy(keyColumn).window(skip, query.getLimit()));
+    }
+
+    private SelectStatementBuilder sortedSelect(Query<T, Void> query) {
+        return orderBy(
+                new SelectStatementBuilder("SELECT * FROM (" + sqlQuery + ")"),
+                query, keyColumn);
     }
 
     @Override
-    protected ResultSet resultSetStatement(Query<T, Void> query)
-            throws SQLException {
-        assert query.getSortOrders() == null || query.getSortOrders().isEmpty();
-        return resultSetStatement.executeQuery();
+    protected Object readKey(ResultSet resultSet) throws SQLException {
+        return resultSet.getObject(keyColumn);
     }
 
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ServiceLoader;
+
+/**
+ * SQL dialect SPI: generates the database specific parts of statements.
+ * <p>
+ * Implementations are discovered with {@link ServiceLoader}, register them in
+ * {@code META-INF/services/com.vaadin.tutorial.todomvc.SqlDialect}.
+ *
+ * @author Vaadin Ltd
+ */
+public interface SqlDialect {
+
+    /**
+     * @return true if the dialect is suitable for the database
+     */
+    boolean supports(DatabaseMetaData metaData) throws SQLException;
+
+    /**
+     * Appends a row window clause to a complete SELECT statement, including
+     * its ORDER BY clause.
+     */
+    void appendWindow(StringBuilder sql);
+
+    /**
+     * Binds parameters of the clause added by
+     * {@link #appendWindow(StringBuilder)}.
+     *
+     * @return index of the next parameter
+     */
+    int bindWindow(PreparedStatement statement, int index, int offset,
+            int limit) throws SQLException;
+
+    /**
+     * Finds a registered dialect for the connection, falls back to
+     * {@link HsqldbDialect}.
+     */
+    static SqlDialect forConnection(Connection connection)
+            throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (SqlDialect dialect : ServiceLoader.load(SqlDialect.class)) {
+            if (dialect.supports(metaData)) {
+                return dialect;
+            }
+        }
+        return new HsqldbDialect();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Where the HSQLDB database of the todos keeps its data
+ *
+ * @author Vaadin Ltd
+ */
+public enum StorageMode {
+    /**
+     * All tables on heap, the data is lost on restart
+     */
+    MEMORY {
+        @Override
+        public String getUrl(String database) {
+            return "jdbc:hsqldb:mem:" + database;
+        }
+
+        @Override
+        public void configure(Connection connection, int cacheRows,
+                int cacheSizeKb) {
+            // Nothing to cache, everything is on heap
+        }
+    },
+    /**
+     * Tables in files, only a cache of recently used rows is on heap
+     */
+    FILE {
+        @Override
+        public String getUrl(String database) {
+            return "jdbc:hsqldb:file:" + database;
+        }
+
+        @Override
+        public void configure(Connection connection, int cacheRows,
+                int cacheSizeKb) throws SQLException {
+            try (Statement s = connection.createStatement()) {
+                // Applies to tables created afterwards, existing tables keep
+                // their type
+                s.execute("SET DATABASE DEFAULT TABLE TYPE CACHED");
+                s.execute("SET FILES CACHE ROWS " + cacheRows);
+                s.execute("SET FILES CACHE SIZE " + cacheSizeKb);
+            }
+        }
+    };
+
+    public static final int DEFAULT_CACHE_ROWS = 50000;
+    public static final int DEFAULT_CACHE_SIZE_KB = 10000;
+
+    /**
+     * @param database name of an in-memory database or path of the database
+     *                 files without extension
+     */
+    public abstract String getUrl(String database);
+
+    /**
+     * Sets up a new connection of the database before any table is created.
+     *
+     * @param cacheRows   maximum number of rows cached on heap
+     * @param cacheSizeKb maximum total size of cached rows
+     */
+    public abstract void configure(Connection connection, int cacheRows,
+            int cacheSizeKb) throws SQLException;
+}
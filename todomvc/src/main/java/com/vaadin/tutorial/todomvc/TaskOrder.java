@@ -0,0 +1,44 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+/**
+ * Order of the todo list
+ *
+ * @author Vaadin Ltd
+ */
+public enum TaskOrder {
+    CREATED {
+        @Override
+        public String getText() {
+            return "Oldest first";
+        }
+    },
+    TEXT {
+        @Override
+        public String getText() {
+            return "A-Z";
+        }
+    },
+    ACTIVE_FIRST {
+        @Override
+        public String getText() {
+            return "Active first";
+        }
+    };
+
+    public abstract String getText();
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+/**
+ * Row-level change of the todo table, published by {@link TodoModel} on its
+ * {@link TodoChangeBus}.
+ *
+ * @author Vaadin Ltd
+ */
+public final class TodoChange {
+
+    public enum Type {
+        INSERTED, UPDATED, DELETED,
+        /**
+         * Any number of rows changed, e.g. all completed todos were cleared.
+         */
+        BULK
+    }
+
+    private final Object source;
+    private final Type type;
+    private final Todo todo;
+    private final int completedDelta;
+    private final int activeDelta;
+
+    private TodoChange(Object source, Type type, Todo todo,
+            int completedDelta, int activeDelta) {
+        this.source = source;
+        this.type = type;
+        this.todo = todo;
+        this.completedDelta = completedDelta;
+        this.activeDelta = activeDelta;
+    }
+
+    /**
+     * Change of a single todo. A copy of the todo is taken, so that
+     * subscribers never share an instance with the publisher.
+     */
+    static TodoChange of(Object source, Type type, Todo todo,
+            int completedDelta, int activeDelta) {
+        Todo copy = new Todo(todo.getId(), todo.getText());
+        copy.setCompleted(todo.isCompleted());
+        return new TodoChange(source, type, copy, completedDelta, activeDelta);
+    }
+
+    static TodoChange bulk(Object source, int completedDelta,
+            int activeDelta) {
+        return new TodoChange(source, Type.BULK, null, completedDelta,
+                activeDelta);
+    }
+
+    /**
+     * The model which made the change.
+     */
+    public Object getSource() {
+        return source;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the changed todo as stored, {@code null} for bulk changes
+     */
+    public Todo getTodo() {
+        return todo;
+    }
+
+    public int getCompletedDelta() {
+        return completedDelta;
+    }
+
+    public int getActiveDelta() {
+        return activeDelta;
+    }
+
+    @Override
+    public String toString() {
+        return "TodoChange{" + type + ", " + todo + ", completed "
+                + completedDelta + ", active " + activeDelta + '}';
+    }
+}
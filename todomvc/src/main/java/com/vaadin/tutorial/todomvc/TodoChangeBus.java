@@ -0,0 +1,112 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.shared.Registration;
+
+/**
+ * In-JVM publish/subscribe channel for {@link TodoChange}s, shared by the
+ * models of one database. Changes are delivered synchronously on the
+ * publishing thread, subscribers which update a UI must hand them over with
+ * {@code UI.access}.
+ * <p>
+ * Writes run with {@link #change(Runnable)} from before their commit until
+ * their change is published, and state which the deltas of later changes are
+ * added to is read with {@link #readBetweenChanges(Supplier)}. Such a read
+ * never sees a change that is committed but not yet published, so no change
+ * is counted twice.
+ *
+ * @author Vaadin Ltd
+ */
+public class TodoChangeBus {
+    private static final Logger LOGGER = Logger
+            .getLogger(TodoChangeBus.class.getName());
+
+    private final List<Consumer<TodoChange>> listeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * Shared by writes until their change is published, exclusive for reads
+     * between changes
+     */
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+
+    public Registration subscribe(Consumer<TodoChange> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    public void publish(TodoChange change) {
+        for (Consumer<TodoChange> listener : listeners) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                // One broken subscriber must not hide the change from others
+                LOGGER.log(Level.WARNING,
+                        "Todo change listener failed for " + change, e);
+            }
+        }
+    }
+
+    /**
+     * Runs a write to the database which publishes its change before
+     * returning. Writes run concurrently with each other, but not with
+     * {@link #readBetweenChanges(Supplier)}.
+     */
+    public void change(Runnable writeAndPublish) {
+        Lock lock = changeLock.readLock();
+        lock.lock();
+        try {
+            writeAndPublish.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads while no write is between its commit and the publishing of its
+     * change, waiting for writes in progress.
+     *
+     * @throws IllegalStateException
+     *             if called by a write or a subscriber on the thread of a
+     *             write, which would wait for itself
+     */
+    public <T> T readBetweenChanges(Supplier<T> read) {
+        if (changeLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException(
+                    "Can't read between changes within a change");
+        }
+        Lock lock = changeLock.writeLock();
+        lock.lock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getSubscriberCount() {
+        return listeners.size();
+    }
+}
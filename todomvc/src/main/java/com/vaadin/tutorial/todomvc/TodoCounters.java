@@ -0,0 +1,57 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+/**
+ * Immutable numbers of completed and active todos
+ *
+ * @author Vaadin Ltd
+ */
+public final class TodoCounters {
+    private final int completed;
+    private final int active;
+
+    public TodoCounters(int completed, int active) {
+        this.completed = completed;
+        this.active = active;
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getTotal() {
+        return completed + active;
+    }
+
+    /**
+     * @return counters changed by the given deltas
+     */
+    public TodoCounters plus(int completedDelta, int activeDelta) {
+        return new TodoCounters(completed + completedDelta,
+                active + activeDelta);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TodoCounters{completed=%d, active=%d}",
+                completed, active);
+    }
+}
@@ -19,66 +19,140 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
 
 import com.vaadin.data.provider.Query;
 
 /**
- * JDBC DataProvider implementation with filtering supported.
+ * JDBC DataProvider implementation with filtering and sorting supported.
  */
 class TodoJDBCDataProvider extends PreparedJDBCDataProvider<Todo, TaskFilter> {
 
-    private final PreparedStatement resultSetStatement;
-    private final PreparedStatement sizeStatement;
+    private static final long SIZE_CACHE_TTL_SECONDS = 30;
 
-    private final PreparedStatement resultSetStatementFiltered;
-    private final PreparedStatement sizeStatementFiltered;
+    private volatile Runnable beforeQuery = () -> {
+    };
+    private volatile boolean countsTable;
 
-    public TodoJDBCDataProvider(Connection connection) throws SQLException {
-        super(connection, resultSet -> {
+    public TodoJDBCDataProvider(DataSource dataSource) {
+        super(dataSource, resultSet -> {
             Todo todo = new Todo();
             todo.setId(resultSet.getInt("id"));
             todo.setText(resultSet.getString("text"));
             todo.setCompleted(resultSet.getBoolean("completed"));
             return todo;
         });
+        setPagingMode(PagingMode.KEYSET);
+        setSortColumn("text", "text");
+        setSortColumn("completed", "completed");
+        // TodoModel invalidates row counts on every change, the time to live
+        // only bounds the drift of a missed one
+        setSizeCacheClearedOnRefresh(false);
+        setSizeCacheTtl(SIZE_CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
 
-        resultSetStatementFiltered =
-                openStatement("SELECT * FROM todo WHERE completed = ?");
-        sizeStatementFiltered =
-                openStatement("SELECT count(*) FROM todo WHERE completed = ?");
+    /**
+     * @param beforeQuery run before every query, e.g. to flush buffered
+     *                    updates
+     */
+    void setBeforeQuery(Runnable beforeQuery) {
+        this.beforeQuery = beforeQuery;
+    }
 
-        resultSetStatement = openStatement("SELECT * FROM todo");
-        sizeStatement = openStatement("SELECT count(*) FROM todo");
+    /**
+     * @param countsTable whether row counts are read from the todo_counts
+     *                    table instead of counting the todos
+     */
+    void setCountsTable(boolean countsTable) {
+        this.countsTable = countsTable;
+    }
 
+    @Override
+    protected void beforeQuery() {
+        beforeQuery.run();
     }
 
     @Override
-    protected synchronized ResultSet rowCountStatement(Query<Todo, TaskFilter> query) throws SQLException {
-        TaskFilter taskFilter = obtainFilterValue(query);
-        if (taskFilter == TaskFilter.ALL) {
-            return sizeStatement.executeQuery();
-        } else {
-            sizeStatementFiltered.setBoolean(1,
-                    taskFilter == TaskFilter.COMPLETED);
-            return sizeStatementFiltered.executeQuery();
+    protected PreparedStatement rowCountStatement(Connection connection,
+            Query<Todo, TaskFilter> query) throws SQLException {
+        if (countsTable) {
+            return openStatement(connection, new SelectStatementBuilder(
+                    countsSql(obtainFilterValue(query))));
         }
+        return openStatement(connection,
+                select("SELECT count(*) FROM todo", query));
     }
 
     @Override
-    protected ResultSet resultSetStatement(
+    protected PreparedStatement resultSetStatement(Connection connection,
             Query<Todo, TaskFilter> query) throws SQLException {
+        return openStatement(connection,
+                orderBy(select("SELECT * FROM todo", query), query, "id"));
+    }
+
+    @Override
+    protected PreparedStatement pagedResultSetStatement(Connection connection,
+            Query<Todo, TaskFilter> query) throws SQLException {
+        return openStatement(connection,
+                orderBy(select("SELECT * FROM todo", query), query, "id")
+                        .window(query.getOffset(), query.getLimit()));
+    }
+
+    @Override
+    protected PreparedStatement keysetResultSetStatement(
+            Connection connection, Query<Todo, TaskFilter> query,
+            Object lastKey, int skip) throws SQLException {
+        SelectStatementBuilder select = select("SELECT * FROM todo", query);
+        if (lastKey != null) {
+            select.where("id > ?", lastKey);
+        }
+        return openStatement(connection,
+                select.orderBy("id").window(skip, query.getLimit()));
+    }
+
+    /**
+     * Todos are identified by database id, so that an item can be refreshed
+     * with any instance of it.
+     */
+    @Override
+    public Object getId(Todo item) {
+        return item.getId();
+    }
+
+    @Override
+    protected Object readKey(ResultSet resultSet) throws SQLException {
+        return resultSet.getInt("id");
+    }
+
+    @Override
+    protected Object filterKey(TaskFilter filter) {
+        return filter == null ? TaskFilter.ALL : filter;
+    }
+
+    private SelectStatementBuilder select(String sql,
+            Query<Todo, TaskFilter> query) {
+        SelectStatementBuilder select = new SelectStatementBuilder(sql);
         TaskFilter taskFilter = obtainFilterValue(query);
-        if (taskFilter == TaskFilter.ALL) {
-            return resultSetStatement.executeQuery();
-        } else {
-            resultSetStatementFiltered.setBoolean(1,
-                    taskFilter == TaskFilter.COMPLETED);
-            return resultSetStatementFiltered.executeQuery();
+        if (taskFilter != TaskFilter.ALL) {
+            select.where("completed = ?", taskFilter == TaskFilter.COMPLETED);
+        }
+        return select;
+    }
+
+    private static String countsSql(TaskFilter taskFilter) {
+        switch (taskFilter) {
+        case ACTIVE:
+            return "SELECT active FROM todo_counts";
+        case COMPLETED:
+            return "SELECT completed FROM todo_counts";
+        default:
+            return "SELECT completed + active FROM todo_counts";
         }
     }
 
     private TaskFilter obtainFilterValue(Query<Todo, TaskFilter> query) {
-        assert query.getSortOrders() == null || query.getSortOrders().isEmpty();
         return query.getFilter().orElse(TaskFilter.ALL);
     }
 
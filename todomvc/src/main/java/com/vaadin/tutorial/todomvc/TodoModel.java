@@ -15,23 +15,102 @@
  */
 package com.vaadin.tutorial.todomvc;
 
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 
+import com.vaadin.shared.Registration;
+
 /**
- * Model for the database, HSQLDB dialect is used, in-memory database
+ * Model for the database, HSQLDB dialect is used, in-memory database by
+ * default
+ * <p>
+ * The shared database is kept in files instead with system property
+ * {@value #STORAGE_PROPERTY} set to {@code file}, see {@link StorageMode}. The
+ * files are at {@value #STORAGE_PATH_PROPERTY}, {@code tododb} in the temporary
+ * directory by default, and the number and total size of rows cached on heap
+ * are set with {@value #CACHE_ROWS_PROPERTY} and
+ * {@value #CACHE_SIZE_PROPERTY} (kilobytes).
+ * <p>
+ * Every operation borrows a connection from the pool and returns it
+ * immediately, so idle UIs do not hold any connections. Pool size is set with
+ * system properties {@value #MAX_TOTAL_PROPERTY},
+ * {@value #MAX_IDLE_PROPERTY} and {@value #MAX_WAIT_PROPERTY} (milliseconds).
+ * Write-behind of updates is enabled for the shared database with
+ * {@value #WRITE_BEHIND_PROPERTY}, see {@link #setWriteBehindMillis(long)}.
+ * Setting {@value #COUNTS_TABLE_PROPERTY} to true maintains the todo counts in
+ * a summary table, so that counting does not scan the todos.
+ * <p>
+ * Metrics of the data provider are published over JMX as
+ * {@code com.vaadin.tutorial.todomvc:type=DataProvider,name="todos-N"}.
+ * <p>
+ * Every change is published as a {@link TodoChange} on the
+ * {@link TodoChangeBus} of the database, within the same change as the write,
+ * and always with the exact change of the counters. Models keep the row
+ * counts of their providers up to date from the changes of other models, and
+ * pass them on to their change listener.
  *
  * @author Vaadin Ltd
  */
-public class TodoModel {
+public class TodoModel implements AutoCloseable {
+
+    public static final String MAX_TOTAL_PROPERTY = "todomvc.pool.maxTotal";
+    public static final String MAX_IDLE_PROPERTY = "todomvc.pool.maxIdle";
+    public static final String MAX_WAIT_PROPERTY = "todomvc.pool.maxWaitMillis";
+    public static final String WRITE_BEHIND_PROPERTY = "todomvc.writeBehindMillis";
+    public static final String COUNTS_TABLE_PROPERTY = "todomvc.countsTable";
+    public static final String STORAGE_PROPERTY = "todomvc.storage";
+    public static final String STORAGE_PATH_PROPERTY = "todomvc.storage.path";
+    public static final String CACHE_ROWS_PROPERTY = "todomvc.storage.cacheRows";
+    public static final String CACHE_SIZE_PROPERTY = "todomvc.storage.cacheSizeKb";
+
+    private static final Logger LOGGER = Logger
+            .getLogger(TodoModel.class.getName());
+
+    private static final String INSERT_SQL = "INSERT INTO todo(id, text, completed) VALUES (NULL, ?, ?)";
+    private static final String UPDATE_SQL = "UPDATE todo SET text= ?,completed=? WHERE id = ?";
+    private static final String UPDATE_UNLESS_COMPLETION_CHANGED_SQL = UPDATE_SQL
+            + " AND completed = ?";
+    private static final String UPDATE_IF_COMPLETION_CHANGED_SQL = UPDATE_SQL
+            + " AND completed <> ?";
+
+    /*
+     * Conditional updates of a todo whose completion state keeps being
+     * changed concurrently are given up after that many rounds
+     */
+    private static final int UPDATE_ATTEMPTS = 3;
+    private static final int NOT_FOUND = Integer.MIN_VALUE;
+    private static final String DELETE_SQL = "DELETE FROM todo WHERE id = ?";
+
+    /*
+     * Rows sent to the database in one JDBC batch
+     */
+    private static final int BATCH_SIZE = 1000;
 
     /*
      * Basic pollable DataSource is used here. That is mandatory for any web
@@ -41,17 +120,116 @@ public class TodoModel {
      */
     private volatile static BasicDataSource dataSource;
 
-    private final Connection conn;
+    /*
+     * Numbers the models, which name the JMX metrics of their providers
+     */
+    private static final AtomicInteger MODEL_NUMBER = new AtomicInteger();
+
+    /*
+     * Connects the models of the shared database
+     */
+    private static final TodoChangeBus CHANGE_BUS = new TodoChangeBus();
+
+    /*
+     * Runs delayed flushes of buffered updates for all models
+     */
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "todo-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /*
+     * Scheduled flushes which fail in a row before retries stop
+     */
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    /*
+     * Models with write-behind, flushed by a shutdown hook
+     */
+    private static final Set<TodoModel> WRITE_BEHIND_MODELS = ConcurrentHashMap
+            .newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (TodoModel model : WRITE_BEHIND_MODELS) {
+                try {
+                    model.flush();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Buffered todo updates were lost"
+                            + " on shutdown", e);
+                }
+            }
+        }, "todo-write-behind-shutdown"));
+    }
+
+    private final DataSource modelDataSource;
     private final TodoJDBCDataProvider dataProvider;
+    private final boolean countsTable;
+    private final TodoChangeBus changeBus;
+    private final Registration changeRegistration;
+    private volatile Consumer<TodoChange> changeListener;
+
+    /*
+     * Write-behind: buffered updates by todo id, the latest one wins. Guarded
+     * by itself, flushes are serialized by flushLock.
+     */
+    private final Map<Integer, Todo> pendingUpdates = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private ScheduledFuture<?> flushTask;
+    private int failedFlushes;
+    private boolean closed;
+    private volatile long writeBehindMillis;
 
     public TodoModel() {
-        try {
-            DriverManager
-                    .registerDriver(org.hsqldb.jdbc.JDBCDriver.driverInstance);
-            conn = getDataSource().getConnection();
-            dataProvider = setupDataProvider();
-        } catch (SQLException e) {
-            throw new RuntimeException("Model initialization failed", e);
+        this(getDataSource(), CHANGE_BUS);
+        setWriteBehindMillis(Long.getLong(WRITE_BEHIND_PROPERTY, 0));
+    }
+
+    /**
+     * @param dataSource pooled data source, the todo table must exist
+     */
+    public TodoModel(DataSource dataSource) {
+        this(dataSource, new TodoChangeBus());
+    }
+
+    /**
+     * @param dataSource pooled data source, the todo table must exist
+     * @param changeBus  bus shared by all models of the database
+     */
+    public TodoModel(DataSource dataSource, TodoChangeBus changeBus) {
+        modelDataSource = dataSource;
+        countsTable = hasCountsTable(dataSource);
+        dataProvider = setupDataProvider();
+        dataProvider.setCountsTable(countsTable);
+        dataProvider.setBeforeQuery(this::flush);
+        dataProvider.getMetrics()
+                .register("todos-" + MODEL_NUMBER.incrementAndGet());
+        this.changeBus = changeBus;
+        changeRegistration = changeBus.subscribe(this::onChange);
+    }
+
+    /**
+     * Sets the listener for changes made by other models on the bus. It is
+     * called on the thread of the other model, after the row counts of this
+     * model are updated.
+     */
+    public void setChangeListener(Consumer<TodoChange> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void onChange(TodoChange change) {
+        if (change.getSource() == this) {
+            return;
+        }
+        adjustSizes(change.getCompletedDelta() + change.getActiveDelta(),
+                TaskFilter.ALL);
+        adjustSizes(change.getCompletedDelta(), TaskFilter.COMPLETED);
+        adjustSizes(change.getActiveDelta(), TaskFilter.ACTIVE);
+        Consumer<TodoChange> listener = changeListener;
+        if (listener != null) {
+            listener.accept(change);
         }
     }
 
@@ -61,42 +239,225 @@ public class TodoModel {
                 // Standard double check trick to avoid double initialization
                 // in case of race conditions
                 if (dataSource == null) {
-                    dataSource = new BasicDataSource();
-                    dataSource.setUrl("jdbc:hsqldb:mem:tododb");
-                    dataSource.setUsername("SA");
-                    dataSource.setPassword("");
-                    try (Connection connection = dataSource.getConnection()) {
+                    try {
+                        DriverManager.registerDriver(
+                                org.hsqldb.jdbc.JDBCDriver.driverInstance);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(
+                                "Model initialization failed", e);
+                    }
+                    StorageMode storageMode = StorageMode.valueOf(System
+                            .getProperty(STORAGE_PROPERTY, "memory")
+                            .toUpperCase(Locale.ROOT));
+                    BasicDataSource newDataSource = new BasicDataSource();
+                    newDataSource.setUrl(storageMode.getUrl(
+                            storageMode == StorageMode.MEMORY ? "tododb"
+                                    : getStoragePath()));
+                    newDataSource.setUsername("SA");
+                    newDataSource.setPassword("");
+                    // Data providers prepare statements for every query,
+                    // each pooled connection keeps them cached
+                    newDataSource.setPoolPreparedStatements(true);
+                    configurePool(newDataSource);
+                    try (Connection connection = newDataSource.getConnection()) {
+                        storageMode.configure(connection,
+                                Integer.getInteger(CACHE_ROWS_PROPERTY,
+                                        StorageMode.DEFAULT_CACHE_ROWS),
+                                Integer.getInteger(CACHE_SIZE_PROPERTY,
+                                        StorageMode.DEFAULT_CACHE_SIZE_KB));
                         setupDatabase(connection);
+                        if (Boolean.getBoolean(COUNTS_TABLE_PROPERTY)) {
+                            setupCountsTable(connection);
+                        }
                     } catch (SQLException e) {
                         throw new RuntimeException(e);
                     }
+                    dataSource = newDataSource;
                 }
             }
         }
         return dataSource;
     }
 
-    private TodoJDBCDataProvider setupDataProvider() throws SQLException {
-        return new TodoJDBCDataProvider(conn);
+    private static String getStoragePath() {
+        String path = System.getProperty(STORAGE_PATH_PROPERTY);
+        if (path == null) {
+            path = Paths.get(System.getProperty("java.io.tmpdir"), "tododb",
+                    "tododb").toString();
+        }
+        return path;
+    }
+
+    private static void configurePool(BasicDataSource pool) {
+        Integer maxTotal = Integer.getInteger(MAX_TOTAL_PROPERTY);
+        if (maxTotal != null) {
+            pool.setMaxTotal(maxTotal);
+        }
+        Integer maxIdle = Integer.getInteger(MAX_IDLE_PROPERTY);
+        if (maxIdle != null) {
+            pool.setMaxIdle(maxIdle);
+        }
+        Long maxWait = Long.getLong(MAX_WAIT_PROPERTY);
+        if (maxWait != null) {
+            pool.setMaxWaitMillis(maxWait);
+        }
     }
 
-    private static void setupDatabase(Connection connection) {
+    private TodoJDBCDataProvider setupDataProvider() {
+        return new TodoJDBCDataProvider(modelDataSource);
+    }
+
+    static void setupDatabase(Connection connection) {
         try (Statement s = connection.createStatement()) {
             s.execute(
-                    "CREATE TABLE todo (id INTEGER IDENTITY PRIMARY KEY, text VARCHAR(255) , completed BOOLEAN)");
+                    "CREATE TABLE todo (id INTEGER IDENTITY PRIMARY KEY, text VARCHAR(255) , completed BOOLEAN DEFAULT FALSE NOT NULL)");
         } catch (SQLException ignored) {
             // Nothing to do here, because
             // the table already exists, re-creation failed
         }
+        migrateNullableCompleted(connection);
+        try (Statement s = connection.createStatement()) {
+            // Serves sorting by text, id breaks ties
+            s.execute("CREATE INDEX todo_text ON todo (text, id)");
+        } catch (SQLException ignored) {
+            // The index already exists
+        }
+        try (Statement s = connection.createStatement()) {
+            // Serves filtering by state, rows come in id order for paging
+            s.execute("CREATE INDEX todo_completed ON todo (completed, id)");
+        } catch (SQLException ignored) {
+            // The index already exists
+        }
+    }
+
+    /**
+     * Tables of earlier versions allowed NULL as completion state, which
+     * filters, counts and triggers would each have to treat alike as active.
+     */
+    private static void migrateNullableCompleted(Connection connection) {
+        try (ResultSet columns = connection.getMetaData().getColumns(null,
+                null, "TODO", "COMPLETED")) {
+            if (!columns.next() || columns.getInt("NULLABLE")
+                    == DatabaseMetaData.columnNoNulls) {
+                return;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Todo table metadata unavailable", e);
+        }
+        try (Statement s = connection.createStatement()) {
+            s.execute("UPDATE todo SET completed = FALSE WHERE completed IS NULL");
+            s.execute("ALTER TABLE todo ALTER COLUMN completed SET DEFAULT FALSE");
+            s.execute("ALTER TABLE todo ALTER COLUMN completed SET NOT NULL");
+        } catch (SQLException e) {
+            throw new RuntimeException("Todo table migration failed", e);
+        }
+    }
+
+    /**
+     * Creates a single row table with the number of completed and active
+     * todos, kept up to date by triggers within the transaction of every
+     * change of the todo table. Models created afterwards read their counts
+     * from it. Can be applied to an existing database, the counts are
+     * initialized from the todos.
+     */
+    static void setupCountsTable(Connection connection) {
+        try (Statement s = connection.createStatement()) {
+            s.execute("CREATE TABLE todo_counts"
+                    + " (completed INTEGER NOT NULL, active INTEGER NOT NULL)");
+            s.execute("INSERT INTO todo_counts VALUES (0, 0)");
+            s.execute("CREATE TRIGGER todo_counts_insert AFTER INSERT ON todo"
+                    + " REFERENCING NEW ROW AS newrow FOR EACH ROW"
+                    + " UPDATE todo_counts SET"
+                    + " completed = completed + " + completedOf("newrow")
+                    + ", active = active + " + activeOf("newrow"));
+            s.execute("CREATE TRIGGER todo_counts_delete AFTER DELETE ON todo"
+                    + " REFERENCING OLD ROW AS oldrow FOR EACH ROW"
+                    + " UPDATE todo_counts SET"
+                    + " completed = completed - " + completedOf("oldrow")
+                    + ", active = active - " + activeOf("oldrow"));
+            // Updates write completed also when it is unchanged, e.g. text
+            // edits, those must not contend for the single counts row
+            s.execute("CREATE TRIGGER todo_counts_update"
+                    + " AFTER UPDATE OF completed ON todo"
+                    + " REFERENCING OLD ROW AS oldrow NEW ROW AS newrow"
+                    + " FOR EACH ROW"
+                    + " WHEN (oldrow.completed <> newrow.completed)"
+                    + " UPDATE todo_counts SET"
+                    + " completed = completed + " + completedOf("newrow")
+                    + " - " + completedOf("oldrow")
+                    + ", active = active + " + activeOf("newrow")
+                    + " - " + activeOf("oldrow"));
+        } catch (SQLException ignored) {
+            // Nothing to do here, because
+            // the table already exists, re-creation failed
+            return;
+        }
+        try (Statement s = connection.createStatement()) {
+            // Single statement, overrides whatever the triggers counted
+            // while the counts table was set up
+            s.execute("UPDATE todo_counts SET"
+                    + " completed = (SELECT count(*) FROM todo WHERE completed),"
+                    + " active = (SELECT count(*) FROM todo WHERE NOT completed)");
+        } catch (SQLException e) {
+            throw new RuntimeException("Counts initialization failed", e);
+        }
+    }
+
+    private static String completedOf(String row) {
+        return "CASE WHEN " + row + ".completed THEN 1 ELSE 0 END";
+    }
+
+    private static String activeOf(String row) {
+        return "CASE WHEN " + row + ".completed THEN 0 ELSE 1 END";
+    }
+
+    private static boolean hasCountsTable(DataSource dataSource) {
+        try (Connection conn = dataSource.getConnection();
+             ResultSet tables = conn.getMetaData().getTables(null, null,
+                     "TODO_COUNTS", null)) {
+            return tables.next();
+        } catch (SQLException e) {
+            throw new RuntimeException("Model initialization failed", e);
+        }
+    }
+
+    /**
+     * Reads both counters with a single query, from the counts table if
+     * there is one and otherwise aggregating the todos. The counters are read
+     * between changes, so that they include every change published before
+     * and none published after.
+     */
+    public TodoCounters getCounters() {
+        flush();
+        String sql = countsTable
+                ? "SELECT completed, active FROM todo_counts"
+                : "SELECT COALESCE(SUM(CASE WHEN completed THEN 1 ELSE 0 END), 0),"
+                        + " COALESCE(SUM(CASE WHEN completed THEN 0 ELSE 1 END), 0)"
+                        + " FROM todo";
+        return changeBus.readBetweenChanges(() -> {
+            try (Connection conn = modelDataSource.getConnection();
+                 Statement s = conn.createStatement();
+                 ResultSet resultSet = s.executeQuery(sql)) {
+                resultSet.next();
+                return new TodoCounters(resultSet.getInt(1),
+                        resultSet.getInt(2));
+            } catch (SQLException e) {
+                throw new RuntimeException(
+                        String.format("Data retrieve failed(%s)", sql), e);
+            }
+        });
     }
 
     public int getCompleted() {
-        return readInteger("select count(*) from todo where COMPLETED");
+        flush();
+        return readInteger(countsTable ? "SELECT completed FROM todo_counts"
+                : "select count(*) from todo where COMPLETED");
     }
 
     private int readInteger(String sql) {
-        try (Statement s = conn.createStatement()) {
-            ResultSet resultSet = s.executeQuery(sql);
+        try (Connection conn = modelDataSource.getConnection();
+             Statement s = conn.createStatement();
+             ResultSet resultSet = s.executeQuery(sql)) {
             resultSet.next();
             return resultSet.getInt(1);
         } catch (SQLException e) {
@@ -106,7 +467,9 @@ public class TodoModel {
     }
 
     public int getActive() {
-        return readInteger("select count(*) from todo where not COMPLETED");
+        flush();
+        return readInteger(countsTable ? "SELECT active FROM todo_counts"
+                : "select count(*) from todo where not COMPLETED");
     }
 
     public TodoJDBCDataProvider getDataProvider() {
@@ -115,63 +478,542 @@ public class TodoModel {
 
     public Todo persist(Todo todo) {
         if (todo.getId() < 0) {
-            try (PreparedStatement s = conn.prepareStatement(
-                    "INSERT INTO todo(id, text, completed) VALUES (NULL, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
-                s.setString(1, todo.getText());
-                s.setBoolean(2, todo.isCompleted());
-                s.executeUpdate();
-                ResultSet generatedKeys = s.getGeneratedKeys();
+            changeBus.change(() -> insert(todo));
+        } else if (writeBehindMillis > 0) {
+            buffer(todo);
+        } else {
+            changeBus.change(() -> writeUpdate(todo));
+        }
+        return todo;
+    }
+
+    private void insert(Todo todo) {
+        try (Connection conn = modelDataSource.getConnection();
+             PreparedStatement s = conn.prepareStatement(INSERT_SQL,
+                Statement.RETURN_GENERATED_KEYS)) {
+            s.setString(1, todo.getText());
+            s.setBoolean(2, todo.isCompleted());
+            s.executeUpdate();
+            try (ResultSet generatedKeys = s.getGeneratedKeys()) {
                 generatedKeys.next();
                 todo.setId(generatedKeys.getInt(1));
-            } catch (SQLException e) {
-                throw new RuntimeException("ToDo insertion failed", e);
             }
-        } else {
-            try (PreparedStatement s = conn.prepareStatement(
-                    "UPDATE todo SET text= ?,completed=? WHERE id = ?")) {
-                s.setString(1, todo.getText());
-                s.setBoolean(2, todo.isCompleted());
-                s.setInt(3, todo.getId());
-                s.execute();
-                if (s.getUpdateCount() != 1) {
+        } catch (SQLException e) {
+            throw new RuntimeException("ToDo insertion failed", e);
+        }
+        adjustSizes(1, TaskFilter.ALL, filterOf(todo));
+        changeBus.publish(TodoChange.of(this, TodoChange.Type.INSERTED,
+                todo, todo.isCompleted() ? 1 : 0,
+                todo.isCompleted() ? 0 : 1));
+    }
+
+    private void writeUpdate(Todo todo) {
+        int[] completedDelta = new int[1];
+        inTransaction("Todo update failed", conn -> {
+            completedDelta[0] = update(conn, todo);
+            if (completedDelta[0] == NOT_FOUND) {
+                throw new RuntimeException(
+                        "Todo update failed (non-existing id?): " + todo);
+            }
+        });
+        if (completedDelta[0] != 0) {
+            adjustSizes(completedDelta[0], TaskFilter.COMPLETED);
+            adjustSizes(-completedDelta[0], TaskFilter.ACTIVE);
+        }
+        changeBus.publish(TodoChange.of(this, TodoChange.Type.UPDATED,
+                todo, completedDelta[0], -completedDelta[0]));
+    }
+
+    /**
+     * Updates a todo with a statement conditioned on the stored completion
+     * state, so that the change of the completed count is known exactly even
+     * if the todo is updated concurrently: only a change of completion moves
+     * the todo between filters.
+     *
+     * @return change of the completed count, or {@link #NOT_FOUND}
+     */
+    private static int update(Connection conn, Todo todo) throws SQLException {
+        for (int attempt = 0; attempt < UPDATE_ATTEMPTS; attempt++) {
+            if (update(conn, todo, UPDATE_UNLESS_COMPLETION_CHANGED_SQL) == 1) {
+                return 0;
+            }
+            if (update(conn, todo, UPDATE_IF_COMPLETION_CHANGED_SQL) == 1) {
+                return todo.isCompleted() ? 1 : -1;
+            }
+            // Either the todo is gone, or its completion state was changed
+            // between the two statements
+        }
+        return NOT_FOUND;
+    }
+
+    private static int update(Connection conn, Todo todo, String sql)
+            throws SQLException {
+        try (PreparedStatement s = conn.prepareStatement(sql)) {
+            bindUpdate(s, todo);
+            s.setBoolean(4, todo.isCompleted());
+            return s.executeUpdate();
+        }
+    }
+
+    public void drop(Todo todo) {
+        flush();
+        changeBus.change(() -> {
+            try (Connection conn = modelDataSource.getConnection();
+                 PreparedStatement s = conn.prepareStatement(DELETE_SQL)) {
+                s.setInt(1, todo.getId());
+                if (s.executeUpdate() != 1) {
                     throw new RuntimeException(
-                            "Todo update failed (non-existing id?): " + todo);
+                            "Deletion failed(non-existing id?): " + todo);
                 }
             } catch (SQLException e) {
-                throw new RuntimeException("Todo update failed", e);
+                throw new RuntimeException("Deletion failed", e);
             }
+            adjustSizes(-1, TaskFilter.ALL, filterOf(todo));
+            changeBus.publish(TodoChange.of(this, TodoChange.Type.DELETED, todo,
+                    todo.isCompleted() ? -1 : 0, todo.isCompleted() ? 0 : -1));
+        });
+    }
+
+    /**
+     * Inserts new todos and updates existing ones with JDBC batches, in a
+     * single transaction. Ids of inserted todos are set.
+     */
+    public void persistAll(Collection<Todo> todos) {
+        flush();
+        List<Todo> inserted = new ArrayList<>();
+        List<Todo> updated = new ArrayList<>();
+        for (Todo todo : todos) {
+            (todo.getId() < 0 ? inserted : updated).add(todo);
         }
-        return todo;
+        changeBus.change(() -> writeAll(inserted, updated));
     }
 
-    public void drop(Todo todo) {
-        try (Statement s = conn.createStatement()) {
-            s.execute("DELETE FROM todo WHERE id = " + todo.getId());
-            if (s.getUpdateCount() != 1) {
-                throw new RuntimeException(
-                        "Deletion failed(non-existing id?): " + todo);
+    private void writeAll(List<Todo> inserted, List<Todo> updated) {
+        List<Todo> completionChanged = new ArrayList<>();
+        try {
+            inTransaction("Batch persist failed", conn -> {
+                try (PreparedStatement s = conn.prepareStatement(INSERT_SQL,
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    for (int from = 0; from < inserted.size(); from += BATCH_SIZE) {
+                        List<Todo> batch = inserted.subList(from,
+                                Math.min(from + BATCH_SIZE, inserted.size()));
+                        for (Todo todo : batch) {
+                            s.setString(1, todo.getText());
+                            s.setBoolean(2, todo.isCompleted());
+                            s.addBatch();
+                        }
+                        s.executeBatch();
+                        readGeneratedIds(s, batch);
+                    }
+                }
+                List<Todo> deleted = new ArrayList<>();
+                updateAll(conn, updated, completionChanged, deleted);
+                if (!deleted.isEmpty()) {
+                    throw new SQLException(
+                            "Todo update failed (non-existing id?): "
+                                    + deleted.get(0));
+                }
+            });
+        } catch (RuntimeException e) {
+            // The transaction was rolled back
+            inserted.forEach(todo -> todo.setId(-1));
+            throw e;
+        }
+        int insertedCompleted = (int) inserted.stream()
+                .filter(Todo::isCompleted).count();
+        int updatedCompleted = completedDelta(completionChanged);
+        int completedDelta = insertedCompleted + updatedCompleted;
+        int activeDelta = inserted.size() - insertedCompleted
+                - updatedCompleted;
+        adjustSizes(inserted.size(), TaskFilter.ALL);
+        adjustSizes(completedDelta, TaskFilter.COMPLETED);
+        adjustSizes(activeDelta, TaskFilter.ACTIVE);
+        changeBus.publish(TodoChange.bulk(this, completedDelta, activeDelta));
+    }
+
+    private static int completedDelta(List<Todo> completionChanged) {
+        int completedDelta = 0;
+        for (Todo todo : completionChanged) {
+            completedDelta += todo.isCompleted() ? 1 : -1;
+        }
+        return completedDelta;
+    }
+
+    /**
+     * Deletes todos with JDBC batches, in a single transaction.
+     */
+    public void dropAll(Collection<Todo> todos) {
+        flush();
+        changeBus.change(() -> {
+            List<Todo> dropped = new ArrayList<>(todos);
+            inTransaction("Batch deletion failed", conn -> {
+                try (PreparedStatement s = conn.prepareStatement(DELETE_SQL)) {
+                    executeInBatches(s, dropped,
+                            (statement, todo) -> statement.setInt(1, todo.getId()),
+                            "Deletion failed(non-existing id?): ");
+                }
+            });
+            int droppedCompleted = (int) dropped.stream()
+                    .filter(Todo::isCompleted).count();
+            adjustSizes(-dropped.size(), TaskFilter.ALL);
+            adjustSizes(-droppedCompleted, TaskFilter.COMPLETED);
+            adjustSizes(droppedCompleted - dropped.size(), TaskFilter.ACTIVE);
+            changeBus.publish(TodoChange.bulk(this, -droppedCompleted,
+                    droppedCompleted - dropped.size()));
+        });
+    }
+
+    private static void readGeneratedIds(PreparedStatement s, List<Todo> batch)
+            throws SQLException {
+        try (ResultSet generatedKeys = s.getGeneratedKeys()) {
+            for (Todo todo : batch) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException(
+                            "Generated keys are missing for the batch");
+                }
+                todo.setId(generatedKeys.getInt(1));
+            }
+        }
+    }
+
+    private static void executeInBatches(PreparedStatement s,
+            List<Todo> todos, StatementBinder binder, String failureMessage)
+            throws SQLException {
+        int[] updateCounts = updateInBatches(s, todos, binder);
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] != 1
+                    && updateCounts[i] != Statement.SUCCESS_NO_INFO) {
+                throw new SQLException(failureMessage + todos.get(i));
             }
-        } catch (SQLException e) {
-            throw new RuntimeException("Deletion failed", e);
         }
     }
 
-    public void clearCompleted() {
-        try (Statement s = conn.createStatement()) {
-            s.execute("DELETE FROM todo WHERE completed");
+    /**
+     * @return update count of every todo
+     */
+    private static int[] updateInBatches(PreparedStatement s,
+            List<Todo> todos, StatementBinder binder) throws SQLException {
+        int[] updateCounts = new int[todos.size()];
+        for (int from = 0; from < todos.size(); from += BATCH_SIZE) {
+            List<Todo> batch = todos.subList(from,
+                    Math.min(from + BATCH_SIZE, todos.size()));
+            for (Todo todo : batch) {
+                binder.bind(s, todo);
+                s.addBatch();
+            }
+            int[] batchCounts = s.executeBatch();
+            System.arraycopy(batchCounts, 0, updateCounts, from,
+                    batchCounts.length);
+        }
+        return updateCounts;
+    }
+
+    private void inTransaction(String failureMessage, Transaction work) {
+        try (Connection conn = modelDataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                work.run(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
         } catch (SQLException e) {
-            throw new RuntimeException("Deletion of completed items failed", e);
+            throw new RuntimeException(failureMessage, e);
         }
     }
 
+    @FunctionalInterface
+    private interface Transaction {
+        void run(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement statement, Todo todo) throws SQLException;
+    }
+
+    /**
+     * @return number of deleted todos
+     */
+    public int clearCompleted() {
+        flush();
+        int[] deleted = new int[1];
+        changeBus.change(() -> {
+            try (Connection conn = modelDataSource.getConnection();
+                 Statement s = conn.createStatement()) {
+                deleted[0] = s.executeUpdate("DELETE FROM todo WHERE completed");
+            } catch (SQLException e) {
+                throw new RuntimeException("Deletion of completed items failed", e);
+            }
+            adjustSizes(-deleted[0], TaskFilter.ALL, TaskFilter.COMPLETED);
+            changeBus.publish(TodoChange.bulk(this, -deleted[0], 0));
+        });
+        return deleted[0];
+    }
+
     public void markAllCompleted(boolean completed) {
+        flush();
+        changeBus.change(() -> {
+            int changed;
+            try (Connection conn = modelDataSource.getConnection();
+                 PreparedStatement s = conn.prepareStatement(
+                         "UPDATE todo SET completed=? WHERE completed<>?")) {
+                s.setBoolean(1, completed);
+                s.setBoolean(2, completed);
+                changed = s.executeUpdate();
+            } catch (SQLException e) {
+                throw new RuntimeException("Update failed", e);
+            }
+            int completedDelta = completed ? changed : -changed;
+            adjustSizes(completedDelta, TaskFilter.COMPLETED);
+            adjustSizes(-completedDelta, TaskFilter.ACTIVE);
+            changeBus.publish(
+                    TodoChange.bulk(this, completedDelta, -completedDelta));
+        });
+    }
+
+    public long getWriteBehindMillis() {
+        return writeBehindMillis;
+    }
+
+    /**
+     * Enables write-behind of updates: {@link #persist(Todo)} of an existing
+     * todo only buffers it, and buffered updates are written in one batch at
+     * most the given delay later. Repeated updates of a todo are coalesced.
+     * <p>
+     * Buffered updates are flushed before every read of this model,
+     * including those of its data provider, and before any other write, so
+     * the model always reads its own writes. Other models see them once
+     * flushed. Flushes also happen on {@link #close()}, i.e. at the end of
+     * the session, on JVM shutdown, and whenever {@value #BATCH_SIZE} updates
+     * are pending.
+     * <p>
+     * This relaxes durability: an update is on disk only once flushed, and
+     * a crash of the JVM loses the updates of the last delay.
+     * <p>
+     * Updates which fail to flush stay buffered, unless the todo has been
+     * deleted meanwhile. Scheduled flushes are retried up to
+     * {@value #MAX_FLUSH_ATTEMPTS} times in a row, after that the next read
+     * or write of the model flushes and fails with the error.
+     *
+     * @param writeBehindMillis maximum delay of buffered updates, 0 to write
+     *                          them immediately (the default)
+     */
+    public void setWriteBehindMillis(long writeBehindMillis) {
+        if (writeBehindMillis < 0) {
+            throw new IllegalArgumentException("Negative write-behind delay");
+        }
+        this.writeBehindMillis = writeBehindMillis;
+        if (writeBehindMillis == 0) {
+            flush();
+            WRITE_BEHIND_MODELS.remove(this);
+        } else {
+            WRITE_BEHIND_MODELS.add(this);
+        }
+    }
+
+    private void buffer(Todo todo) {
+        Todo copy = new Todo(todo.getId(), todo.getText());
+        copy.setCompleted(todo.isCompleted());
+        boolean full;
+        synchronized (pendingUpdates) {
+            pendingUpdates.put(copy.getId(), copy);
+            // Retries have stopped after failures, or the model is closed
+            full = pendingUpdates.size() >= BATCH_SIZE
+                    || failedFlushes >= MAX_FLUSH_ATTEMPTS || closed;
+            if (!full) {
+                scheduleFlush();
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /*
+     * Called with the pendingUpdates lock held
+     */
+    private void scheduleFlush() {
+        if (flushTask == null && !closed
+                && failedFlushes < MAX_FLUSH_ATTEMPTS) {
+            flushTask = FLUSH_SCHEDULER.schedule(this::scheduledFlush,
+                    writeBehindMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduledFlush() {
+        synchronized (pendingUpdates) {
+            flushTask = null;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            boolean retrying;
+            synchronized (pendingUpdates) {
+                retrying = flushTask != null;
+            }
+            LOGGER.log(retrying ? Level.WARNING : Level.SEVERE,
+                    "Buffered todo updates were not written"
+                            + (retrying ? ", retrying later"
+                                    : ", giving up until the next access"),
+                    e);
+        }
+    }
+
+    /**
+     * Writes buffered updates to the database, waiting for a flush in
+     * progress.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<Todo> updates;
+            synchronized (pendingUpdates) {
+                if (pendingUpdates.isEmpty()) {
+                    return;
+                }
+                updates = new ArrayList<>(pendingUpdates.values());
+                pendingUpdates.clear();
+            }
+            try {
+                changeBus.change(() -> writeUpdates(updates));
+            } catch (RuntimeException e) {
+                synchronized (pendingUpdates) {
+                    // Updates buffered during the flush are newer
+                    for (Todo todo : updates) {
+                        pendingUpdates.putIfAbsent(todo.getId(), todo);
+                    }
+                    failedFlushes++;
+                    scheduleFlush();
+                }
+                throw e;
+            }
+            synchronized (pendingUpdates) {
+                failedFlushes = 0;
+            }
+        }
+    }
+
+    private void writeUpdates(List<Todo> updates) {
+        List<Todo> completionChanged = new ArrayList<>();
+        List<Todo> deleted = new ArrayList<>();
+        inTransaction("Buffered todo update failed", conn -> {
+            completionChanged.clear();
+            deleted.clear();
+            updateAll(conn, updates, completionChanged, deleted);
+        });
+        if (!deleted.isEmpty()) {
+            LOGGER.log(Level.WARNING,
+                    "Buffered updates of deleted todos were dropped: {0}",
+                    deleted);
+        }
+        int completedDelta = completedDelta(completionChanged);
+        adjustSizes(completedDelta, TaskFilter.COMPLETED);
+        adjustSizes(-completedDelta, TaskFilter.ACTIVE);
+        for (Todo todo : updates) {
+            if (deleted.contains(todo)) {
+                continue;
+            }
+            int delta = !completionChanged.contains(todo) ? 0
+                    : todo.isCompleted() ? 1 : -1;
+            changeBus.publish(TodoChange.of(this, TodoChange.Type.UPDATED,
+                    todo, delta, -delta));
+        }
+    }
+
+    /**
+     * Updates todos with batches conditioned on their stored completion
+     * state, like {@link #update(Connection, Todo)}, within the transaction
+     * of the connection.
+     *
+     * @param completionChanged receives the todos whose completion changed
+     * @param deleted           receives the todos which do not exist
+     */
+    private static void updateAll(Connection conn, List<Todo> updates,
+            List<Todo> completionChanged, List<Todo> deleted)
+            throws SQLException {
+        int[] updateCounts;
         try (PreparedStatement s = conn
-                .prepareStatement("UPDATE todo SET completed=?")) {
-            s.setBoolean(1, completed);
-            s.execute();
-        } catch (SQLException e) {
-            throw new RuntimeException("Update failed", e);
+                .prepareStatement(UPDATE_UNLESS_COMPLETION_CHANGED_SQL)) {
+            updateCounts = updateInBatches(s, updates,
+                    (statement, todo) -> {
+                        bindUpdate(statement, todo);
+                        statement.setBoolean(4, todo.isCompleted());
+                    });
+        }
+        List<Todo> moved = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                moved.add(updates.get(i));
+            }
+        }
+        try (PreparedStatement s = conn
+                .prepareStatement(UPDATE_IF_COMPLETION_CHANGED_SQL)) {
+            updateCounts = updateInBatches(s, moved,
+                    (statement, todo) -> {
+                        bindUpdate(statement, todo);
+                        statement.setBoolean(4, todo.isCompleted());
+                    });
+        }
+        for (int i = 0; i < updateCounts.length; i++) {
+            Todo todo = moved.get(i);
+            if (updateCounts[i] == 1) {
+                completionChanged.add(todo);
+                continue;
+            }
+            // Changed concurrently between the batches, or deleted
+            int completedDelta = update(conn, todo);
+            if (completedDelta == NOT_FOUND) {
+                deleted.add(todo);
+            } else if (completedDelta != 0) {
+                completionChanged.add(todo);
+            }
+        }
+    }
+
+    private static void bindUpdate(PreparedStatement s, Todo todo)
+            throws SQLException {
+        s.setString(1, todo.getText());
+        s.setBoolean(2, todo.isCompleted());
+        s.setInt(3, todo.getId());
+    }
+
+    private void adjustSizes(int delta, TaskFilter... filters) {
+        for (TaskFilter filter : filters) {
+            dataProvider.adjustSize(filter, delta);
+        }
+    }
+
+    private static TaskFilter filterOf(Todo todo) {
+        return todo.isCompleted() ? TaskFilter.COMPLETED : TaskFilter.ACTIVE;
+    }
+
+    /**
+     * Flushes buffered updates and releases resources of the model. The
+     * shared connection pool stays open.
+     */
+    @Override
+    public void close() {
+        synchronized (pendingUpdates) {
+            closed = true;
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+        }
+        try {
+            flush();
+        } finally {
+            WRITE_BEHIND_MODELS.remove(this);
+            changeRegistration.remove();
+            try {
+                dataProvider.close();
+            } catch (Exception e) {
+                throw new RuntimeException("Data provider close failed", e);
+            }
         }
     }
 
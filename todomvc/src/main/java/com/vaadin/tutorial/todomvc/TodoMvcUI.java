@@ -2,6 +2,7 @@ package com.vaadin.tutorial.todomvc;
 
 import javax.servlet.annotation.WebServlet;
 
+import com.vaadin.annotations.Push;
 import com.vaadin.annotations.Theme;
 import com.vaadin.annotations.Title;
 import com.vaadin.annotations.VaadinServletConfiguration;
@@ -15,6 +16,7 @@ import com.vaadin.ui.UI;
  * By default, a new UI instance is automatically created when the page is loaded. To reuse
  * the same instance, add @PreserveOnRefresh.
  */
+@Push
 @Title("TodoMVC")
 @Theme("todo")
 public class TodoMvcUI extends UI {
@@ -39,7 +41,7 @@ public class TodoMvcUI extends UI {
      * name and turn on production mode when you have finished developing the
      * application.
      */
-    @WebServlet(urlPatterns = "/*")
+    @WebServlet(urlPatterns = "/*", asyncSupported = true)
     @VaadinServletConfiguration(ui = TodoMvcUI.class, productionMode = false)
     public static class MyUIServlet extends VaadinServlet {
     }
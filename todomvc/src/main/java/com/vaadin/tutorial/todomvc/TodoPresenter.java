@@ -6,52 +6,122 @@ public class TodoPresenter {
 
     private TodoModel model = new TodoModel();
 
+    /*
+     * Read when the view is attached, then maintained from the known effect
+     * of every change
+     */
+    private TodoCounters counters;
+
     public TodoPresenter(TodoView view) {
         this.view = view;
         view.setDataProvider(model.getDataProvider());
-        view.updateCounters(model.getCompleted(), model.getActive());
+        // Listening starts before the counters are read, so that no change
+        // falls in between
+        model.setChangeListener(
+                change -> view.access(() -> applyChange(change)));
+    }
+
+    /**
+     * Reads the counters, to be called when the view is attached. Changes
+     * made in other UIs are not applied to a detached view.
+     */
+    public void readCounters() {
+        counters = model.getCounters();
+        updateCounters();
+    }
+
+    /**
+     * Applies a change made in another UI.
+     */
+    private void applyChange(TodoChange change) {
+        counters = counters.plus(change.getCompletedDelta(),
+                change.getActiveDelta());
+        updateCounters();
+        switch (change.getType()) {
+        case INSERTED:
+            view.itemAdded(change.getTodo());
+            break;
+        case DELETED:
+            view.itemRemoved(change.getTodo());
+            break;
+        case UPDATED:
+            if (change.getCompletedDelta() == 0) {
+                // Only the text may have changed
+                view.refreshItem(change.getTodo(), true, false);
+                break;
+            }
+            // The todo may have entered the filtered list
+            refreshView();
+            break;
+        default:
+            refreshView();
+        }
     }
 
     public void markCompleted(Todo todo, boolean completed) {
+        boolean wasCompleted = todo.isCompleted();
         todo.setCompleted(completed);
         model.persist(todo);
-        view.updateCounters(model.getCompleted(), model.getActive());
-        refreshView();
+        if (wasCompleted != completed) {
+            int delta = completed ? 1 : -1;
+            counters = counters.plus(delta, -delta);
+        }
+        updateCounters();
+        view.refreshItem(todo, false, wasCompleted != completed);
     }
 
     public void updateTodo(Todo todo) {
         model.persist(todo);
-        refreshView();
+        view.refreshItem(todo, true, false);
     }
 
     public void add(Todo todo) {
         model.persist(todo);
-        view.updateCounters(model.getCompleted(), model.getActive());
+        counters = todo.isCompleted() ? counters.plus(1, 0)
+                : counters.plus(0, 1);
+        updateCounters();
 
-        refreshView();
+        view.itemAdded(todo);
     }
 
     public void delete(Todo todo) {
         model.drop(todo);
-        view.updateCounters(model.getCompleted(), model.getActive());
+        counters = todo.isCompleted() ? counters.plus(-1, 0)
+                : counters.plus(0, -1);
+        updateCounters();
 
-        refreshView();
+        view.itemRemoved(todo);
     }
 
     public void clearCompleted() {
         model.clearCompleted();
 
-        view.updateCounters(model.getCompleted(), model.getActive());
+        counters = new TodoCounters(0, counters.getActive());
+        updateCounters();
         refreshView();
     }
 
     public void markAllCompleted(boolean completed) {
         model.markAllCompleted(completed);
-        view.updateCounters(model.getCompleted(), model.getActive());
+        int total = counters.getTotal();
+        counters = completed ? new TodoCounters(total, 0)
+                : new TodoCounters(0, total);
+        updateCounters();
         refreshView();
     }
 
     public void refreshView() {
         view.refresh();
     }
+
+    /**
+     * Releases the model, to be called when the view is discarded.
+     */
+    public void close() {
+        model.close();
+    }
+
+    private void updateCounters() {
+        view.updateCounters(counters.getCompleted(), counters.getActive());
+    }
 }
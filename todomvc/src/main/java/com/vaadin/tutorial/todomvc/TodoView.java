@@ -4,7 +4,34 @@ public interface TodoView {
 
     void refresh();
 
+    /**
+     * The todo has been changed, but not added or removed. The whole list is
+     * refreshed instead of the row if the row may have moved, i.e. left the
+     * filtered list or changed its position in the sort order.
+     *
+     * @param textChanged       whether the text may have changed
+     * @param completionChanged whether the todo was completed or reopened
+     */
+    void refreshItem(Todo todo, boolean textChanged, boolean completionChanged);
+
+    /**
+     * The todo has been added. Rows can't be inserted to a back end data
+     * provider one by one, so the list is refreshed if the todo is shown.
+     */
+    void itemAdded(Todo todo);
+
+    /**
+     * The todo has been removed, the list is refreshed if it was shown.
+     */
+    void itemRemoved(Todo todo);
+
     void updateCounters(int completed, int active);
 
     void setDataProvider(TodoJDBCDataProvider dataProvider);
+
+    /**
+     * Runs the command with the view locked, e.g. when called from the
+     * thread of another UI. Ignored if the view is not attached.
+     */
+    void access(Runnable command);
 }
@@ -5,6 +5,7 @@ import java.util.EnumSet;
 import com.vaadin.data.provider.ConfigurableFilterDataProvider;
 import com.vaadin.event.ShortcutListener;
 import com.vaadin.icons.VaadinIcons;
+import com.vaadin.shared.data.sort.SortDirection;
 import com.vaadin.shared.ui.ValueChangeMode;
 import com.vaadin.ui.Alignment;
 import com.vaadin.ui.Button;
@@ -14,6 +15,7 @@ import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.Label;
 import com.vaadin.ui.RadioButtonGroup;
 import com.vaadin.ui.TextField;
+import com.vaadin.ui.UI;
 import com.vaadin.ui.VerticalLayout;
 import com.vaadin.ui.renderers.ButtonRenderer;
 import com.vaadin.ui.themes.ValoTheme;
@@ -25,6 +27,8 @@ public class TodoViewImpl extends VerticalLayout implements TodoView {
     private final TodoPresenter presenter;
 
     private Grid<Todo> grid;
+    private Grid.Column<Todo, String> completeButtonColumn;
+    private Grid.Column<Todo, String> todoStringColumn;
     private HorizontalLayout bottomBar;
     private Label itemCountLabel;
     private TextField newTodoField;
@@ -40,6 +44,10 @@ public class TodoViewImpl extends VerticalLayout implements TodoView {
 
     private ConfigurableFilterDataProvider<Todo, Void, TaskFilter> filterDataProvider;
 
+    private TaskFilter currentFilter = TaskFilter.ALL;
+
+    private TaskOrder currentOrder = TaskOrder.CREATED;
+
     public TodoViewImpl() {
 
         setWidth("100%");
@@ -99,22 +107,25 @@ public class TodoViewImpl extends VerticalLayout implements TodoView {
         grid.setDetailsGenerator(this::createTodoEditor);
         grid.setStyleGenerator(this::createStyle);
 
-        Grid.Column<Todo, String> completeButtonColumn = grid
+        completeButtonColumn = grid
                 .addColumn(t -> "",
                         new ButtonRenderer<>(event -> presenter.markCompleted(
                                 event.getItem(), !event.getItem()
                                         .isCompleted())));
         completeButtonColumn.setWidth(80);
+        completeButtonColumn.setSortProperty("completed");
 
-        Grid.Column<Todo, String> todoStringColumn = grid.addColumn(
+        todoStringColumn = grid.addColumn(
                 Todo::getText,
                 new ButtonRenderer<>(e -> editTodo(e.getItem())));
         todoStringColumn.setExpandRatio(1);
+        todoStringColumn.setSortProperty("text");
 
         Grid.Column<Todo, String> deleteButtonColumn = grid.addColumn(t -> "",
                 new ButtonRenderer<>(
                         event -> presenter.delete(event.getItem())));
         deleteButtonColumn.setWidth(60);
+        deleteButtonColumn.setSortable(false);
         grid.removeHeaderRow(0);
 
         addComponent(grid);
@@ -133,10 +144,21 @@ public class TodoViewImpl extends VerticalLayout implements TodoView {
         filters.addStyleName(ValoTheme.OPTIONGROUP_SMALL);
         filters.setValue(TaskFilter.ALL);
         filters.addValueChangeListener(event -> {
-            filterDataProvider.setFilter(event.getValue());
+            currentFilter = event.getValue();
+            filterDataProvider.setFilter(currentFilter);
             presenter.refreshView();
         });
 
+        // The TodoMVC layout has no grid header to click for sorting
+        RadioButtonGroup<TaskOrder> orders = new RadioButtonGroup<>(null,
+                EnumSet.allOf(TaskOrder.class));
+        orders.setItemCaptionGenerator(TaskOrder::getText);
+        orders.setId("orders");
+        orders.addStyleName(ValoTheme.OPTIONGROUP_HORIZONTAL);
+        orders.addStyleName(ValoTheme.OPTIONGROUP_SMALL);
+        orders.setValue(TaskOrder.CREATED);
+        orders.addValueChangeListener(event -> sort(event.getValue()));
+
         clearCompleted = new Button("Clear completed");
         clearCompleted.setId("clear-completed");
         clearCompleted.addStyleName(ValoTheme.BUTTON_BORDERLESS);
@@ -146,7 +168,8 @@ public class TodoViewImpl extends VerticalLayout implements TodoView {
         bottomBar = new HorizontalLayout();
         bottomBar.setId("bottom-bar");
         bottomBar.setDefaultComponentAlignment(Alignment.MIDDLE_CENTER);
-        bottomBar.addComponents(itemCountLabel, filters, clearCompleted);
+        bottomBar.addComponents(itemCountLabel, filters, orders,
+                clearCompleted);
         bottomBar.setExpandRatio(filters, 1);
         bottomBar.setComponentAlignment(filters, Alignment.TOP_LEFT);
         bottomBar.setVisible(false);
@@ -155,11 +178,100 @@ public class TodoViewImpl extends VerticalLayout implements TodoView {
         addComponents(bottomBar);
     }
 
+    private void sort(TaskOrder order) {
+        currentOrder = order;
+        // Sort orders are pushed down to the data provider as ORDER BY
+        switch (order) {
+        case TEXT:
+            grid.sort(todoStringColumn, SortDirection.ASCENDING);
+            break;
+        case ACTIVE_FIRST:
+            grid.sort(completeButtonColumn, SortDirection.ASCENDING);
+            break;
+        default:
+            grid.clearSortOrder();
+        }
+    }
+
+    @Override
+    public void attach() {
+        super.attach();
+        presenter.readCounters();
+    }
+
+    @Override
+    public void detach() {
+        super.detach();
+        // Also called for every UI when the session is destroyed
+        presenter.close();
+    }
+
+    @Override
+    public void access(Runnable command) {
+        UI ui = getUI();
+        if (ui != null) {
+            ui.access(command);
+        }
+    }
+
     @Override
     public void refresh() {
         grid.getDataProvider().refreshAll();
     }
 
+    @Override
+    public void refreshItem(Todo todo, boolean textChanged,
+            boolean completionChanged) {
+        if (isShown(todo) && !isMoved(textChanged, completionChanged)) {
+            grid.getDataProvider().refreshItem(todo);
+        } else {
+            // The row has left the filtered list, or may have moved in the
+            // sort order
+            refresh();
+        }
+    }
+
+    /**
+     * @return whether a changed property is the one the list is sorted by
+     */
+    private boolean isMoved(boolean textChanged, boolean completionChanged) {
+        switch (currentOrder) {
+        case TEXT:
+            return textChanged;
+        case ACTIVE_FIRST:
+            return completionChanged;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void itemAdded(Todo todo) {
+        // Row counts are kept up to date by the model, so the refresh reads
+        // only the visible rows
+        if (isShown(todo)) {
+            refresh();
+        }
+    }
+
+    @Override
+    public void itemRemoved(Todo todo) {
+        if (isShown(todo)) {
+            refresh();
+        }
+    }
+
+    private boolean isShown(Todo todo) {
+        switch (currentFilter) {
+        case ACTIVE:
+            return !todo.isCompleted();
+        case COMPLETED:
+            return todo.isCompleted();
+        default:
+            return true;
+        }
+    }
+
     @Override
     public void updateCounters(int completed, int active) {
         bottomBar.setVisible(completed != 0 || active != 0);
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Stress test for one data provider shared by concurrent threads
+ *
+ * @author Vaadin Ltd
+ */
+public class TestConcurrentFetches {
+    private static final int ROWS = 1000;
+    private static final int THREADS = 8;
+    private static final int FETCHES_PER_THREAD = 300;
+
+    private static BasicDataSource dataSource;
+    private static TodoJDBCDataProvider dataProvider;
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.open("concurrentdb");
+        dataSource.setPoolPreparedStatements(true);
+        dataSource.setMaxTotal(THREADS / 2);
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate(
+                        "CREATE TABLE todo (id INTEGER PRIMARY KEY, text VARCHAR(255), completed BOOLEAN)");
+            }
+            // Even ids are completed, odd ones are active
+            try (PreparedStatement statement = conn.prepareStatement(
+                    "INSERT INTO todo VALUES (?, ?, ?)")) {
+                for (int i = 0; i < ROWS; i++) {
+                    statement.setInt(1, i);
+                    statement.setString(2, "Todo " + i);
+                    statement.setBoolean(3, i % 2 == 0);
+                    statement.executeUpdate();
+                }
+            }
+        }
+        dataProvider = new TodoJDBCDataProvider(dataSource);
+    }
+
+    @Test
+    public void concurrentFetchesReturnConsistentWindows() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long seed = t;
+                results.add(executor.submit(() -> fetchRandomly(seed)));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Void fetchRandomly(long seed) {
+        Random random = new Random(seed);
+        TaskFilter[] filters = TaskFilter.values();
+        for (int i = 0; i < FETCHES_PER_THREAD; i++) {
+            TaskFilter filter = filters[random.nextInt(filters.length)];
+            int total = filter == TaskFilter.ALL ? ROWS : ROWS / 2;
+            int offset = random.nextInt(total);
+            int limit = 1 + random.nextInt(50);
+            Query<Todo, TaskFilter> query = new Query<>(offset, limit,
+                    Collections.emptyList(), null, filter);
+
+            int expectedSize = Math.min(limit, total - offset);
+            assertEquals("Size " + filter, expectedSize,
+                    dataProvider.size(query));
+            List<Integer> ids = dataProvider.fetch(query).map(Todo::getId)
+                    .collect(Collectors.toList());
+            assertEquals("Fetched " + filter, expectedSize, ids.size());
+            for (int j = 0; j < ids.size(); j++) {
+                assertEquals("Row " + (offset + j) + " of " + filter,
+                        expectedId(filter, offset + j),
+                        ids.get(j).intValue());
+            }
+        }
+        return null;
+    }
+
+    private static int expectedId(TaskFilter filter, int position) {
+        switch (filter) {
+        case COMPLETED:
+            return position * 2;
+        case ACTIVE:
+            return position * 2 + 1;
+        default:
+            return position;
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        TestDatabase.dropTable(dataSource, "todo");
+        dataProvider.close();
+        dataSource.close();
+    }
+}
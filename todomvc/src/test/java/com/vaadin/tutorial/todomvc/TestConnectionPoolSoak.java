@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Soak test: many concurrently open models share a small connection pool
+ *
+ * @author Vaadin Ltd
+ */
+public class TestConnectionPoolSoak {
+    private static final int UIS = 1000;
+    private static final int POOL_SIZE = 10;
+    private static final int THREADS = 100;
+
+    private static BasicDataSource dataSource;
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.open("soakdb");
+        dataSource.setPoolPreparedStatements(true);
+        dataSource.setMaxTotal(POOL_SIZE);
+        dataSource.setMaxIdle(POOL_SIZE);
+        dataSource.setMaxWaitMillis(30000);
+        try (Connection conn = dataSource.getConnection()) {
+            TodoModel.setupDatabase(conn);
+        }
+    }
+
+    @Test
+    public void thousandModelsOnTenConnections() throws Exception {
+        // All the models are open at the same time, as they would be for
+        // idle UIs, and none of them holds a connection
+        List<TodoModel> models = new ArrayList<>();
+        for (int i = 0; i < UIS; i++) {
+            models.add(new TodoModel(dataSource));
+        }
+        assertEquals("Connections held by idle models", 0,
+                dataSource.getNumActive());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < UIS; i++) {
+                TodoModel model = models.get(i);
+                String prefix = "UI " + i + " ";
+                results.add(executor.submit(() -> simulateUI(model, prefix)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals("Leaked connections", 0, dataSource.getNumActive());
+        assertTrue("Pool grew beyond its limit",
+                dataSource.getNumIdle() <= POOL_SIZE);
+        TodoModel model = models.get(0);
+        assertEquals(UIS * 2, model.getActive() + model.getCompleted());
+        models.forEach(TodoModel::close);
+    }
+
+    private static void simulateUI(TodoModel model, String prefix) {
+        Todo first = model.persist(new Todo(prefix + "first"));
+        Todo second = model.persist(new Todo(prefix + "second"));
+        Todo third = model.persist(new Todo(prefix + "third"));
+
+        second.setCompleted(true);
+        model.persist(second);
+        third.setText(prefix + "edited");
+        model.persist(third);
+        model.drop(first);
+
+        Query<Todo, TaskFilter> query = new Query<>(TaskFilter.ALL);
+        List<Todo> page = model.getDataProvider().fetch(query)
+                .collect(Collectors.toList());
+        assertTrue(page.size() >= 2);
+        assertTrue(model.getDataProvider().size(query) >= 2);
+        model.getCompleted();
+        model.getActive();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        TestDatabase.dropTable(dataSource, "todo");
+        dataSource.close();
+    }
+}
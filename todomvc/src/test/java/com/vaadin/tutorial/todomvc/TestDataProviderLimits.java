@@ -16,21 +16,31 @@
 package com.vaadin.tutorial.todomvc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import org.apache.commons.dbcp2.BasicDataSource;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
 
 /**
  * Test JDBC
@@ -39,7 +49,9 @@ import com.vaadin.data.provider.Query;
  */
 public class TestDataProviderLimits {
     private static Connection conn;
+    private static BasicDataSource dataSource;
     private static SimpleJDBCDataProvider<Integer> dataProvider;
+    private static SimpleJDBCDataProvider<Integer> keysetDataProvider;
 
     @BeforeClass
     public static void setUpAll() throws SQLException {
@@ -62,9 +74,30 @@ public class TestDataProviderLimits {
                 preparedStatement.executeUpdate();
             }
         }
-        dataProvider = new SimpleJDBCDataProvider<>(conn,
+        dataSource = TestDatabase.open("dataproviderdb");
+        dataSource.setPoolPreparedStatements(true);
+        dataProvider = new SimpleJDBCDataProvider<>(dataSource,
                 "SELECT i FROM long_table ORDER BY i",
                 resultSet -> resultSet.getInt(1));
+        // Windows of the ordered statement are read with OFFSET
+        dataProvider.setPagingMode(AbstractJDBCDataProvider.PagingMode.OFFSET);
+        keysetDataProvider = new SimpleJDBCDataProvider<>(dataSource,
+                "SELECT i FROM long_table", "i",
+                resultSet -> resultSet.getInt(1));
+        keysetDataProvider.setSortColumn("i", "i");
+    }
+
+    private void doKeysetRetrieveTest(int offset, int limit,
+            int expectedFirst, int expectedLast) {
+        Query<Integer, Void> query = new Query<>(offset, limit,
+                Collections.emptyList(), null, null);
+        List<Integer> values = keysetDataProvider.fetch(query)
+                .collect(Collectors.toList());
+        assertEquals("Response size", expectedLast - expectedFirst + 1,
+                values.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i + expectedFirst, values.get(i).intValue());
+        }
     }
 
     private void doRetrieveTest(int offset, int limit, int expectedFirst,
@@ -81,6 +114,18 @@ public class TestDataProviderLimits {
         }
     }
 
+    @Test
+    public void defaultPagingModes() throws Exception {
+        SimpleJDBCDataProvider<Integer> unorderedDataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM long_table",
+                resultSet -> resultSet.getInt(1));
+        assertEquals(AbstractJDBCDataProvider.PagingMode.CURSOR,
+                unorderedDataProvider.getPagingMode());
+        assertEquals(AbstractJDBCDataProvider.PagingMode.KEYSET,
+                keysetDataProvider.getPagingMode());
+        unorderedDataProvider.close();
+    }
+
     @Test
     public void retrieveInfinite() {
         doRetrieveTest(0, Integer.MAX_VALUE, 0, 99);
@@ -106,12 +151,146 @@ public class TestDataProviderLimits {
         doRetrieveTest(90, 20, 90, 99);
     }
 
+    @Test
+    public void retrieveKeysetSequential() {
+        for (int offset = 0; offset < 100; offset += 20) {
+            doKeysetRetrieveTest(offset, 20, offset, offset + 19);
+        }
+    }
+
+    @Test
+    public void retrieveKeysetShiftedFromKnownPage() {
+        doKeysetRetrieveTest(0, 20, 0, 19);
+        doKeysetRetrieveTest(25, 20, 25, 44);
+        doKeysetRetrieveTest(90, 20, 90, 99);
+    }
+
+    @Test
+    public void retrieveKeysetAfterRefresh() {
+        doKeysetRetrieveTest(0, 30, 0, 29);
+        keysetDataProvider.refreshAll();
+        doKeysetRetrieveTest(30, 30, 30, 59);
+    }
+
+    @Test
+    public void retrieveSortedDescending() {
+        Query<Integer, Void> query = new Query<>(10, 5,
+                Collections.singletonList(
+                        new QuerySortOrder("i", SortDirection.DESCENDING)),
+                null, null);
+        assertEquals(Arrays.asList(89, 88, 87, 86, 85), keysetDataProvider
+                .fetch(query).collect(Collectors.toList()));
+        // Sorting does not disturb the page keys of the key order
+        doKeysetRetrieveTest(0, 20, 0, 19);
+        doKeysetRetrieveTest(20, 20, 20, 39);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retrieveSortedByUnknownProperty() {
+        Query<Integer, Void> query = new Query<>(0, 5,
+                Collections.singletonList(new QuerySortOrder(
+                        "i; DROP TABLE long_table", SortDirection.ASCENDING)),
+                null, null);
+        keysetDataProvider.fetch(query);
+    }
+
+    @Test
+    public void retrieveLazy() throws Exception {
+        SimpleJDBCDataProvider<Integer> lazyDataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM long_table ORDER BY i",
+                resultSet -> resultSet.getInt(1));
+        lazyDataProvider.setLazyFetch(true);
+        Query<Integer, Void> query = new Query<>(10, 50,
+                Collections.emptyList(), null, null);
+        try (Stream<Integer> values = lazyDataProvider.fetch(query)) {
+            assertEquals(Arrays.asList(10, 11, 12),
+                    values.limit(3).collect(Collectors.toList()));
+        }
+        assertEquals("Connections held", 0, dataSource.getNumActive());
+        // An exhausted stream is released without closing
+        assertEquals(50, lazyDataProvider.fetch(query)
+                .collect(Collectors.toList()).size());
+        assertEquals("Connections held", 0, dataSource.getNumActive());
+        lazyDataProvider.close();
+    }
+
+    @Test
+    public void retrievePrefetched() throws Exception {
+        SimpleJDBCDataProvider<Integer> prefetchingDataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM long_table", "i",
+                resultSet -> resultSet.getInt(1));
+        prefetchingDataProvider.setPrefetchRows(15);
+        // Windows are partly covered by the rows read ahead
+        for (int offset = 0; offset < 100; offset += 10) {
+            doPrefetchedRetrieveTest(prefetchingDataProvider, offset);
+        }
+        for (int offset = 95; offset >= 0; offset -= 10) {
+            doPrefetchedRetrieveTest(prefetchingDataProvider, offset);
+        }
+        prefetchingDataProvider.refreshAll();
+        doPrefetchedRetrieveTest(prefetchingDataProvider, 30);
+        doPrefetchedRetrieveTest(prefetchingDataProvider, 40);
+        prefetchingDataProvider.close();
+    }
+
+    @Test
+    public void slowReadAheadIsNotAwaited() {
+        PageCache<Integer> pageCache = new PageCache<>(4);
+        CompletableFuture<List<Integer>> rows = pageCache.reserve("key", 10,
+                10);
+        assertNull(pageCache.get("key", 10, 10, 10));
+        assertTrue("Read-ahead cancelled", rows.isCancelled());
+        // The dropped window can be read ahead again
+        rows = pageCache.reserve("key", 10, 10);
+        assertNotNull(rows);
+        rows.complete(Arrays.asList(10, 11, 12));
+        assertEquals(Arrays.asList(11, 12), pageCache.get("key", 11, 5, 10));
+    }
+
+    private void doPrefetchedRetrieveTest(
+            SimpleJDBCDataProvider<Integer> prefetchingDataProvider,
+            int offset) {
+        Query<Integer, Void> query = new Query<>(offset, 10,
+                Collections.emptyList(), null, null);
+        assertEquals(
+                IntStream.range(offset, Math.min(offset + 10, 100)).boxed()
+                        .collect(Collectors.toList()),
+                prefetchingDataProvider.fetch(query)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void adaptiveFetchSize() throws Exception {
+        SimpleJDBCDataProvider<Integer> lazyDataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM long_table ORDER BY i",
+                resultSet -> resultSet.getInt(1));
+        lazyDataProvider.setLazyFetch(true);
+        Query<Integer, Void> query = new Query<>(0, 50,
+                Collections.emptyList(), null, null);
+        assertEquals(50, lazyDataProvider.fetch(query)
+                .collect(Collectors.toList()).size());
+        assertEquals("Fetch size", 50, lazyDataProvider.getLastFetchSize());
+        assertTrue("Row width", lazyDataProvider.getRowWidth() > 0);
+        // Consumers reading only a few rows shrink the fetch size
+        for (int i = 0; i < 20; i++) {
+            try (Stream<Integer> values = lazyDataProvider.fetch(query)) {
+                assertEquals(4, values.limit(4).count());
+            }
+        }
+        lazyDataProvider.fetch(query).close();
+        assertTrue("Fetch size " + lazyDataProvider.getLastFetchSize(),
+                lazyDataProvider.getLastFetchSize() < 10);
+        lazyDataProvider.close();
+    }
+
     @AfterClass
     public static void tearDown() throws Exception {
         try (Statement statement = conn.createStatement()) {
             statement.executeUpdate("DROP TABLE long_table");
         }
         dataProvider.close();
+        keysetDataProvider.close();
+        dataSource.close();
         conn.close();
     }
 }
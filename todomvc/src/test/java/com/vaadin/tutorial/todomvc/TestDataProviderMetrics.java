@@ -0,0 +1,173 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.management.ObjectName;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Test data provider metrics and their JMX registration
+ *
+ * @author Vaadin Ltd
+ */
+public class TestDataProviderMetrics {
+    private static BasicDataSource dataSource;
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.open("metricsdb");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(
+                        "CREATE TABLE metrics_table (i INTEGER PRIMARY KEY)");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO metrics_table VALUES (?)")) {
+                for (int i = 0; i < 100; i++) {
+                    statement.setInt(1, i);
+                    statement.executeUpdate();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMean());
+        assertEquals(1_000_000, histogram.getMax());
+        long median = histogram.getPercentile(50);
+        assertTrue("Median " + median,
+                median >= 500_000 && median <= 500_000 * 1.125);
+        long p99 = histogram.getPercentile(99);
+        assertTrue("99th percentile " + p99,
+                p99 >= 990_000 && p99 <= 1_000_000);
+    }
+
+    @Test
+    public void providerCounters() throws Exception {
+        SimpleJDBCDataProvider<Integer> dataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM metrics_table ORDER BY i",
+                resultSet -> resultSet.getInt(1));
+        dataProvider.setPagingMode(AbstractJDBCDataProvider.PagingMode.CURSOR);
+        Query<Integer, Void> query = new Query<>(30, 20,
+                Collections.emptyList(), null, null);
+        assertEquals(20, dataProvider.size(query));
+        assertEquals(20, dataProvider.size(query));
+        assertEquals(20, dataProvider.fetch(query)
+                .collect(Collectors.toList()).size());
+
+        DataProviderMetrics metrics = dataProvider.getMetrics();
+        assertEquals(2, metrics.getSizeRequests());
+        assertEquals(1, metrics.getSizeCacheHits());
+        assertEquals(1, metrics.getFetchRequests());
+        assertEquals(20, metrics.getRowsRead());
+        assertEquals(30, metrics.getRowsSkipped());
+        assertEquals(20, metrics.getLastFetchSize());
+        metrics.reset();
+        assertEquals(0, metrics.getRowsRead());
+        dataProvider.close();
+    }
+
+    @Test
+    public void sizeNotCachedIfDeltaArrivesDuringCount() throws Exception {
+        SimpleJDBCDataProvider<Integer> dataProvider = new SimpleJDBCDataProvider<Integer>(
+                dataSource, "SELECT i FROM metrics_table ORDER BY i",
+                resultSet -> resultSet.getInt(1)) {
+            @Override
+            protected PreparedStatement rowCountStatement(
+                    Connection connection, Query<Integer, Void> query)
+                    throws SQLException {
+                // A concurrent change, its delta is published while the
+                // count is queried
+                adjustSize(null, 1);
+                return super.rowCountStatement(connection, query);
+            }
+        };
+        Query<Integer, Void> query = new Query<>();
+        assertEquals(100, dataProvider.size(query));
+        assertEquals(100, dataProvider.size(query));
+        assertEquals(0, dataProvider.getMetrics().getSizeCacheHits());
+        dataProvider.close();
+    }
+
+    @Test
+    public void sizeCacheExpires() throws Exception {
+        SimpleJDBCDataProvider<Integer> dataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM metrics_table ORDER BY i",
+                resultSet -> resultSet.getInt(1));
+        Query<Integer, Void> query = new Query<>();
+        assertEquals(100, dataProvider.size(query));
+        dataProvider.adjustSize(null, 5);
+        assertEquals(105, dataProvider.size(query));
+        assertEquals(1, dataProvider.getMetrics().getSizeCacheHits());
+
+        dataProvider.setSizeCacheTtl(1, TimeUnit.NANOSECONDS);
+        Thread.sleep(1);
+        assertEquals(100, dataProvider.size(query));
+        assertEquals(1, dataProvider.getMetrics().getSizeCacheHits());
+        dataProvider.close();
+    }
+
+    @Test
+    public void jmxRegistration() throws Exception {
+        SimpleJDBCDataProvider<Integer> dataProvider = new SimpleJDBCDataProvider<>(
+                dataSource, "SELECT i FROM metrics_table ORDER BY i",
+                resultSet -> resultSet.getInt(1));
+        DataProviderMetrics metrics = dataProvider.getMetrics();
+        assertTrue(metrics.register("metrics-test"));
+        ObjectName name = metrics.getObjectName();
+        assertTrue(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name));
+        assertEquals(0L, ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "RowsRead"));
+        dataProvider.close();
+        assertNull(metrics.getObjectName());
+        assertFalse(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name));
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        TestDatabase.dropTable(dataSource, "metrics_table");
+        dataSource.close();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * Data sources over HSQLDB databases for tests
+ *
+ * @author Vaadin Ltd
+ */
+final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * @return pooled data source over the in-memory database of that name
+     */
+    static BasicDataSource open(String database) {
+        return openUrl("jdbc:hsqldb:mem:" + database);
+    }
+
+    static BasicDataSource openUrl(String url) {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setUrl(url);
+        dataSource.setUsername("SA");
+        dataSource.setPassword("");
+        return dataSource;
+    }
+
+    /**
+     * @return pooled data source over the in-memory database of that name,
+     * with the todo table created
+     */
+    static BasicDataSource openTodoDatabase(String database)
+            throws SQLException {
+        BasicDataSource dataSource = open(database);
+        try (Connection conn = dataSource.getConnection()) {
+            TodoModel.setupDatabase(conn);
+        }
+        return dataSource;
+    }
+
+    static void dropTable(DataSource dataSource, String table)
+            throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE " + table);
+        }
+    }
+}
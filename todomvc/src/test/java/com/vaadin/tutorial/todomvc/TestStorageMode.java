@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * File storage keeps todos in cached tables across restarts
+ *
+ * @author Vaadin Ltd
+ */
+public class TestStorageMode {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fileStorageSurvivesRestart() throws Exception {
+        String database = folder.getRoot().toPath().resolve("todo")
+                .toString();
+        try (BasicDataSource dataSource = open(database);
+                TodoModel model = new TodoModel(dataSource)) {
+            model.persist(new Todo("Persistent"));
+            assertEquals("CACHED", readString(dataSource,
+                    "SELECT hsqldb_type FROM information_schema.system_tables"
+                            + " WHERE table_name = 'TODO'"));
+            shutdown(dataSource);
+        }
+        try (BasicDataSource dataSource = open(database);
+                TodoModel model = new TodoModel(dataSource)) {
+            assertEquals(1, model.getActive());
+            assertEquals("Persistent",
+                    readString(dataSource, "SELECT text FROM todo"));
+            shutdown(dataSource);
+        }
+    }
+
+    private static BasicDataSource open(String database) throws SQLException {
+        BasicDataSource dataSource = TestDatabase
+                .openUrl(StorageMode.FILE.getUrl(database));
+        try (Connection conn = dataSource.getConnection()) {
+            StorageMode.FILE.configure(conn, StorageMode.DEFAULT_CACHE_ROWS,
+                    StorageMode.DEFAULT_CACHE_SIZE_KB);
+            TodoModel.setupDatabase(conn);
+        }
+        return dataSource;
+    }
+
+    private static String readString(BasicDataSource dataSource, String sql)
+            throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement();
+                ResultSet resultSet = s.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private static void shutdown(BasicDataSource dataSource)
+            throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            s.execute("SHUTDOWN");
+        }
+    }
+}
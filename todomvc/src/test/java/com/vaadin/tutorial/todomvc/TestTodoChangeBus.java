@@ -0,0 +1,185 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Changes of one TodoModel reach the other models of the database
+ *
+ * @author Vaadin Ltd
+ */
+public class TestTodoChangeBus {
+    private static BasicDataSource dataSource;
+
+    private TodoChangeBus changeBus;
+    private TodoModel publisher;
+    private TodoModel subscriber;
+    private final List<TodoChange> received = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.openTodoDatabase("changebusdb");
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            s.executeUpdate("DELETE FROM todo");
+        }
+        changeBus = new TodoChangeBus();
+        publisher = new TodoModel(dataSource, changeBus);
+        subscriber = new TodoModel(dataSource, changeBus);
+        subscriber.setChangeListener(received::add);
+    }
+
+    @Test
+    public void rowChangesAreDelivered() {
+        Todo todo = publisher.persist(new Todo("Shared"));
+        assertEquals(1, received.size());
+        assertChange(received.get(0), TodoChange.Type.INSERTED, 0, 1);
+        assertEquals(todo.getId(), received.get(0).getTodo().getId());
+
+        todo.setText("Renamed");
+        publisher.persist(todo);
+        assertChange(received.get(1), TodoChange.Type.UPDATED, 0, 0);
+        assertEquals("Renamed", received.get(1).getTodo().getText());
+
+        todo.setCompleted(true);
+        publisher.persist(todo);
+        assertChange(received.get(2), TodoChange.Type.UPDATED, 1, -1);
+
+        publisher.drop(todo);
+        assertChange(received.get(3), TodoChange.Type.DELETED, -1, 0);
+        assertEquals(4, received.size());
+    }
+
+    @Test
+    public void ownChangesAreNotDelivered() {
+        List<TodoChange> own = new ArrayList<>();
+        publisher.setChangeListener(own::add);
+        publisher.persist(new Todo("Local"));
+        assertEquals(0, own.size());
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void bulkChangesCarryCounterDeltas() {
+        for (int i = 0; i < 5; i++) {
+            publisher.persist(new Todo("Todo " + i));
+        }
+        received.clear();
+        publisher.markAllCompleted(true);
+        assertChange(received.get(0), TodoChange.Type.BULK, 5, -5);
+        assertNull(received.get(0).getTodo());
+        assertEquals(5, publisher.clearCompleted());
+        assertChange(received.get(1), TodoChange.Type.BULK, -5, 0);
+    }
+
+    @Test
+    public void batchUpdatesCarryCounterDeltas() {
+        Todo first = publisher.persist(new Todo("First"));
+        Todo second = publisher.persist(new Todo("Second"));
+        received.clear();
+        first.setCompleted(true);
+        second.setText("Renamed");
+        publisher.persistAll(Arrays.asList(first, second, new Todo("Third")));
+        assertChange(received.get(0), TodoChange.Type.BULK, 1, 0);
+    }
+
+    @Test
+    public void countersAreReadBetweenChanges() throws Exception {
+        publisher.persist(new Todo("First"));
+        TodoCounters[] counters = new TodoCounters[1];
+        changeBus.change(() -> {
+            CompletableFuture<TodoCounters> read = CompletableFuture
+                    .supplyAsync(subscriber::getCounters);
+            try {
+                read.get(200, TimeUnit.MILLISECONDS);
+                throw new AssertionError("Counters were read within a change");
+            } catch (TimeoutException expected) {
+                // Waits for the change to be published
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            publisher.persist(new Todo("Second"));
+            counters[0] = read.join();
+        });
+        assertEquals(2, counters[0].getActive());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void countersAreNotReadWithinAChange() {
+        changeBus.change(subscriber::getCounters);
+    }
+
+    @Test
+    public void rowCountsFollowRemoteChanges() {
+        TodoJDBCDataProvider dataProvider = subscriber.getDataProvider();
+        assertEquals(0, dataProvider.size(new Query<>(TaskFilter.ALL)));
+        assertEquals(0, dataProvider.size(new Query<>(TaskFilter.ACTIVE)));
+        publisher.persist(new Todo("First"));
+        publisher.persist(new Todo("Second"));
+        // Answered from the adjusted size cache, without a COUNT query
+        dataProvider.getMetrics().reset();
+        assertEquals(2, dataProvider.size(new Query<>(TaskFilter.ALL)));
+        assertEquals(2, dataProvider.size(new Query<>(TaskFilter.ACTIVE)));
+        assertEquals(2, dataProvider.getMetrics().getSizeCacheHits());
+        TodoCounters counters = subscriber.getCounters();
+        assertEquals(0, counters.getCompleted());
+        assertEquals(2, counters.getActive());
+    }
+
+    private static void assertChange(TodoChange change, TodoChange.Type type,
+            int completedDelta, int activeDelta) {
+        assertEquals(type, change.getType());
+        assertEquals(completedDelta, change.getCompletedDelta());
+        assertEquals(activeDelta, change.getActiveDelta());
+    }
+
+    @After
+    public void tearDown() {
+        publisher.close();
+        subscriber.close();
+        assertEquals(0, changeBus.getSubscriberCount());
+    }
+
+    @AfterClass
+    public static void tearDownAll() throws Exception {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * The todo_counts table follows every change of the todos
+ *
+ * @author Vaadin Ltd
+ */
+public class TestTodoCountsTable {
+    private static BasicDataSource dataSource;
+
+    private TodoModel model;
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.openTodoDatabase("countsdb");
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            // Existing todos are counted when the table is added
+            s.executeUpdate("INSERT INTO todo(text, completed)"
+                    + " VALUES ('Old', TRUE), ('Older', FALSE)");
+            TodoModel.setupCountsTable(conn);
+            assertCounts(1, 1);
+            s.executeUpdate("DELETE FROM todo");
+        }
+    }
+
+    @Before
+    public void setUp() {
+        model = new TodoModel(dataSource);
+    }
+
+    @Test
+    public void rowChangesAreCounted() {
+        Todo first = model.persist(new Todo("First"));
+        Todo second = model.persist(new Todo("Second"));
+        assertCounts(0, 2);
+        second.setCompleted(true);
+        model.persist(second);
+        assertCounts(1, 1);
+        second.setText("Renamed");
+        model.persist(second);
+        assertCounts(1, 1);
+        model.drop(first);
+        assertCounts(1, 0);
+        model.drop(second);
+        assertCounts(0, 0);
+    }
+
+    @Test
+    public void bulkChangesAreCounted() {
+        List<Todo> todos = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            todos.add(new Todo("Todo " + i));
+        }
+        model.persistAll(todos);
+        assertCounts(0, 10);
+        model.markAllCompleted(true);
+        assertCounts(10, 0);
+        todos.get(0).setCompleted(false);
+        todos.get(1).setCompleted(false);
+        model.persistAll(todos.subList(0, 2));
+        assertCounts(8, 2);
+        assertEquals(8, model.clearCompleted());
+        assertCounts(0, 2);
+        model.dropAll(todos.subList(0, 2));
+        assertCounts(0, 0);
+    }
+
+    @Test
+    public void countersReadTheCountsTable() {
+        model.persistAll(Arrays.asList(new Todo("Active"), new Todo("Also")));
+        model.markAllCompleted(false);
+        Todo done = model.persist(new Todo("Done"));
+        done.setCompleted(true);
+        model.persist(done);
+        TodoCounters counters = model.getCounters();
+        assertEquals(1, counters.getCompleted());
+        assertEquals(2, counters.getActive());
+        assertEquals(1, model.getCompleted());
+        assertEquals(2, model.getActive());
+        TodoJDBCDataProvider dataProvider = model.getDataProvider();
+        assertEquals(3, dataProvider.size(new Query<>(TaskFilter.ALL)));
+        assertEquals(2, dataProvider.size(new Query<>(TaskFilter.ACTIVE)));
+        assertEquals(1, dataProvider.size(new Query<>(TaskFilter.COMPLETED)));
+    }
+
+    @Test
+    public void nullCompletionOfOldTablesIsMigrated() throws SQLException {
+        BasicDataSource oldDataSource = TestDatabase.open("nullabledb");
+        try (Connection conn = oldDataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            s.execute("CREATE TABLE todo (id INTEGER IDENTITY PRIMARY KEY,"
+                    + " text VARCHAR(255), completed BOOLEAN)");
+            s.executeUpdate("INSERT INTO todo(text, completed)"
+                    + " VALUES ('Unknown', NULL), ('Done', TRUE)");
+            TodoModel.setupDatabase(conn);
+            TodoModel.setupCountsTable(conn);
+        }
+        TodoModel oldModel = new TodoModel(oldDataSource);
+        TodoCounters counters = oldModel.getCounters();
+        assertEquals(1, counters.getCompleted());
+        assertEquals(1, counters.getActive());
+        assertEquals(1, oldModel.getDataProvider()
+                .size(new Query<>(TaskFilter.ACTIVE)));
+        oldModel.markAllCompleted(true);
+        assertEquals(2, oldModel.getCompleted());
+        assertEquals(0, oldModel.getActive());
+        oldModel.close();
+        oldDataSource.close();
+    }
+
+    private static void assertCounts(int completed, int active) {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement();
+                ResultSet resultSet = s.executeQuery(
+                        "SELECT completed, active FROM todo_counts")) {
+            resultSet.next();
+            assertEquals(completed, resultSet.getInt(1));
+            assertEquals(active, resultSet.getInt(2));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        model.close();
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            s.executeUpdate("DELETE FROM todo");
+        }
+    }
+
+    @AfterClass
+    public static void tearDownAll() throws Exception {
+        dataSource.close();
+    }
+}
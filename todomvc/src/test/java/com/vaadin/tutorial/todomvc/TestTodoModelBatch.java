@@ -0,0 +1,102 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Batched bulk operations of TodoModel. Throughput is measured by
+ * TodoModelBatchBenchmark of the benchmarks module.
+ *
+ * @author Vaadin Ltd
+ */
+public class TestTodoModelBatch {
+    // More than two batches, the last one partial
+    private static final int ROWS = 2_500;
+
+    private static BasicDataSource dataSource;
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.openTodoDatabase("batchdb");
+    }
+
+    @Test
+    public void persistUpdateAndDropAll() {
+        TodoModel model = new TodoModel(dataSource);
+        List<Todo> todos = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Todo todo = new Todo("Imported " + i);
+            todo.setCompleted(i % 4 == 0);
+            todos.add(todo);
+        }
+        model.persistAll(todos);
+
+        Set<Integer> ids = new HashSet<>();
+        todos.forEach(todo -> ids.add(todo.getId()));
+        assertEquals("Unique generated ids", ROWS, ids.size());
+        TodoCounters counters = model.getCounters();
+        assertEquals(ROWS / 4, counters.getCompleted());
+        assertEquals(ROWS - ROWS / 4, counters.getActive());
+
+        todos.forEach(todo -> todo.setCompleted(true));
+        model.persistAll(todos);
+        assertEquals(ROWS, model.getCounters().getCompleted());
+
+        model.dropAll(todos);
+        assertEquals(0, model.getCounters().getTotal());
+        model.close();
+    }
+
+    @Test
+    public void failedBatchIsRolledBack() {
+        TodoModel model = new TodoModel(dataSource);
+        Todo existing = model.persist(new Todo("existing"));
+        Todo missing = new Todo(Integer.MAX_VALUE, "never stored");
+        Todo added = new Todo("added");
+        List<Todo> todos = new ArrayList<>();
+        todos.add(added);
+        todos.add(missing);
+        try {
+            model.persistAll(todos);
+            fail("Update of a non-existing id should fail");
+        } catch (RuntimeException expected) {
+            // update of a non-existing id fails the whole batch
+        }
+        assertEquals(-1, added.getId());
+        assertEquals(1, model.getCounters().getTotal());
+        model.drop(existing);
+        model.close();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        TestDatabase.dropTable(dataSource, "todo");
+        dataSource.close();
+    }
+}
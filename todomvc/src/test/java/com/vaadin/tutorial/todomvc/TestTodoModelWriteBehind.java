@@ -0,0 +1,213 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.tutorial.todomvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+/**
+ * Buffered updates of TodoModel are coalesced and written before reads
+ *
+ * @author Vaadin Ltd
+ */
+public class TestTodoModelWriteBehind {
+    private static BasicDataSource dataSource;
+
+    private TodoChangeBus changeBus;
+    private TodoModel writer;
+    private TodoModel reader;
+    private final List<TodoChange> received = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        dataSource = TestDatabase.openTodoDatabase("writebehinddb");
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            s.executeUpdate("DELETE FROM todo");
+        }
+        changeBus = new TodoChangeBus();
+        writer = new TodoModel(dataSource, changeBus);
+        reader = new TodoModel(dataSource, changeBus);
+        reader.setChangeListener(received::add);
+        // Long enough not to flush by timer during a test
+        writer.setWriteBehindMillis(60000);
+    }
+
+    @Test
+    public void updatesAreCoalesced() {
+        Todo todo = writer.persist(new Todo("Typed"));
+        received.clear();
+        for (int i = 0; i < 10; i++) {
+            todo.setText("Typed " + i);
+            todo.setCompleted(i % 2 == 0);
+            writer.persist(todo);
+        }
+        writer.persist(todo);
+        todo.setText("Typed again");
+        writer.persist(todo);
+        todo.setCompleted(true);
+        writer.persist(todo);
+        assertEquals(0, received.size());
+        assertEquals("Typed", readTexts().get(0));
+
+        writer.flush();
+        assertEquals(1, received.size());
+        assertEquals(TodoChange.Type.UPDATED, received.get(0).getType());
+        assertEquals(1, received.get(0).getCompletedDelta());
+        assertEquals(-1, received.get(0).getActiveDelta());
+        assertEquals("Typed again", readTexts().get(0));
+        TodoCounters counters = reader.getCounters();
+        assertEquals(1, counters.getCompleted());
+        assertEquals(0, counters.getActive());
+    }
+
+    @Test
+    public void readsFlushBufferedUpdates() {
+        Todo todo = writer.persist(new Todo("First"));
+        writer.getCounters();
+        todo.setCompleted(true);
+        writer.persist(todo);
+        // Own counters and queries see the buffered update
+        assertEquals(1, writer.getCompleted());
+        assertEquals(0, writer.getActive());
+
+        todo.setText("Second");
+        writer.persist(todo);
+        List<Todo> fetched = writer.getDataProvider()
+                .fetch(new Query<>(TaskFilter.COMPLETED))
+                .collect(Collectors.toList());
+        assertEquals(1, fetched.size());
+        assertEquals("Second", fetched.get(0).getText());
+    }
+
+    @Test
+    public void updatesOfDeletedTodosAreDropped() {
+        Todo todo = writer.persist(new Todo("Doomed"));
+        todo.setText("Edited");
+        writer.persist(todo);
+        reader.drop(new Todo(todo.getId(), "Doomed"));
+        received.clear();
+        writer.flush();
+        assertTrue(readTexts().isEmpty());
+        assertEquals(0, received.size());
+    }
+
+    @Test
+    public void closeFlushesBufferedUpdates() {
+        Todo todo = writer.persist(new Todo("Closing"));
+        todo.setText("Closed");
+        writer.persist(todo);
+        writer.close();
+        assertEquals("Closed", readTexts().get(0));
+        writer = new TodoModel(dataSource, changeBus);
+    }
+
+    @Test
+    public void disablingWriteBehindFlushes() {
+        Todo todo = writer.persist(new Todo("Buffered"));
+        todo.setText("Written");
+        writer.persist(todo);
+        writer.setWriteBehindMillis(0);
+        assertEquals("Written", readTexts().get(0));
+        todo.setText("Directly");
+        writer.persist(todo);
+        assertEquals("Directly", readTexts().get(0));
+    }
+
+    @Test
+    public void failingFlushesStopRetryingAndSurface() throws Exception {
+        Todo todo = writer.persist(new Todo("Written later"));
+        writer.setWriteBehindMillis(1);
+        execute("ALTER TABLE todo RENAME TO todo_away");
+        try {
+            todo.setText("Buffered while failing");
+            writer.persist(todo);
+            // Once the scheduled retries are exhausted, the next write
+            // flushes and fails
+            long deadline = System.currentTimeMillis() + 5000;
+            while (true) {
+                try {
+                    writer.persist(todo);
+                } catch (RuntimeException expected) {
+                    break;
+                }
+                assertTrue("Scheduled flushes are still retried",
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            execute("ALTER TABLE todo_away RENAME TO todo");
+        }
+        writer.flush();
+        assertEquals("Buffered while failing", readTexts().get(0));
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            s.execute(sql);
+        }
+    }
+
+    private List<String> readTexts() {
+        try (Connection conn = dataSource.getConnection();
+                Statement s = conn.createStatement()) {
+            List<String> texts = new ArrayList<>();
+            try (ResultSet resultSet = s
+                    .executeQuery("SELECT text FROM todo ORDER BY id")) {
+                while (resultSet.next()) {
+                    texts.add(resultSet.getString(1));
+                }
+            }
+            return texts;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        writer.close();
+        reader.close();
+        assertEquals(0, changeBus.getSubscriberCount());
+    }
+
+    @AfterClass
+    public static void tearDownAll() throws Exception {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,83 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of child counts by item id, least recently used counts are
+ * evicted first. A missing count is loaded together with the counts of its
+ * siblings, so that a whole level costs a single query.
+ */
+class ChildCountCache {
+
+    private final Map<Object, Integer> counts;
+
+    /**
+     * @param maxSize maximum number of cached counts
+     */
+    ChildCountCache(int maxSize) {
+        counts = new LinkedHashMap<Object, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param id     id of the parent item
+     * @param loader loads the counts of the parent and its siblings by id,
+     *               parents without children may be missing
+     * @return number of children
+     */
+    int get(Object id, Function<Object, Map<Object, Integer>> loader) {
+        synchronized (counts) {
+            Integer count = counts.get(id);
+            if (count != null) {
+                return count;
+            }
+        }
+        // Loaded without the lock, a concurrent load of the same level only
+        // costs a duplicate query
+        Map<Object, Integer> loaded = loader.apply(id);
+        synchronized (counts) {
+            counts.putAll(loaded);
+            counts.putIfAbsent(id, 0);
+            return loaded.getOrDefault(id, 0);
+        }
+    }
+
+    /**
+     * @return the cached number of children, null if not cached
+     */
+    Integer getIfCached(Object id) {
+        synchronized (counts) {
+            return counts.get(id);
+        }
+    }
+
+    void put(Object id, int count) {
+        synchronized (counts) {
+            counts.put(id, count);
+        }
+    }
+
+    void invalidate(Object id) {
+        synchronized (counts) {
+            counts.remove(id);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (counts) {
+            counts.clear();
+        }
+    }
+
+    int size() {
+        synchronized (counts) {
+            return counts.size();
+        }
+    }
+}
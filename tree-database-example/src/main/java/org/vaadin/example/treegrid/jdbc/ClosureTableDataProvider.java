@@ -0,0 +1,142 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import com.vaadin.data.provider.AbstractBackEndHierarchicalDataProvider;
+import com.vaadin.data.provider.HierarchicalQuery;
+import org.vaadin.example.treegrid.jdbc.pojo.HierarchyNode;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Hierarchical data provider of any depth over the closure table of
+ * {@link HierarchyIndex}. Besides the children of a node, it reads whole
+ * subtrees and subtree sizes with single queries.
+ */
+public class ClosureTableDataProvider extends AbstractBackEndHierarchicalDataProvider<HierarchyNode, Void> {
+
+    private static final String NODE_COLUMNS = "n.node_id, n.parent_id, n.kind, n.ref_id, n.name";
+
+    @Override
+    public int getChildCount(HierarchicalQuery<HierarchyNode, Void> query) {
+        HierarchyNode parent = query.getParent();
+        String sql = parent == null
+                ? "SELECT COUNT(*) FROM org_node WHERE parent_id IS NULL"
+                : "SELECT COUNT(*) FROM org_node WHERE parent_id = ?";
+        return Math.max(0, readInt(sql, parent) - query.getOffset());
+    }
+
+    @Override
+    protected Stream<HierarchyNode> fetchChildrenFromBackEnd(HierarchicalQuery<HierarchyNode, Void> query) {
+        HierarchyNode parent = query.getParent();
+        String sql = "SELECT " + NODE_COLUMNS + " FROM org_node n WHERE n.parent_id "
+                + (parent == null ? "IS NULL" : "= ?")
+                + " ORDER BY n.node_id OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (parent != null) {
+                statement.setLong(index++, parent.getId());
+            }
+            statement.setInt(index++, query.getOffset());
+            statement.setInt(index, query.getLimit());
+            return readNodes(statement).stream();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Counted on the same table as {@link #getChildCount}, so that both agree.
+     */
+    @Override
+    public boolean hasChildren(HierarchyNode item) {
+        return getChildCount(new HierarchicalQuery<>(null, item)) > 0;
+    }
+
+    /**
+     * @return number of nodes below the node at any depth
+     */
+    public int getSubtreeSize(HierarchyNode node) {
+        return readInt("SELECT COUNT(*) FROM org_closure WHERE ancestor = ? AND depth > 0", node);
+    }
+
+    /**
+     * Reads all the nodes below the node, e.g. to expand them all. Parents
+     * come before their children, nodes of the same depth are ordered by id.
+     *
+     * @param maxDepth maximum depth below the node, 1 for the children only
+     */
+    public List<HierarchyNode> fetchSubtree(HierarchyNode node, int maxDepth) {
+        String sql = "SELECT " + NODE_COLUMNS + " FROM org_closure c"
+                + " JOIN org_node n ON n.node_id = c.descendant"
+                + " WHERE c.ancestor = ? AND c.depth BETWEEN 1 AND ?"
+                + " ORDER BY c.depth, n.node_id";
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, node.getId());
+            statement.setInt(2, maxDepth);
+            return readNodes(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads all the nodes with children at any depth, e.g. to expand them
+     * all, with a single query. Parents come before their children.
+     */
+    public List<HierarchyNode> fetchBranches() {
+        String sql = "SELECT " + NODE_COLUMNS + " FROM org_node n"
+                + " JOIN org_closure c ON c.descendant = n.node_id"
+                + " JOIN org_node r ON r.node_id = c.ancestor AND r.parent_id IS NULL"
+                + " WHERE EXISTS (SELECT 1 FROM org_node k WHERE k.parent_id = n.node_id)"
+                + " ORDER BY c.depth, n.node_id";
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            return readNodes(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Object getId(HierarchyNode item) {
+        return item.getId();
+    }
+
+    private static List<HierarchyNode> readNodes(PreparedStatement statement) throws SQLException {
+        List<HierarchyNode> nodes = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                long parentId = resultSet.getLong("parent_id");
+                boolean root = resultSet.wasNull();
+                nodes.add(new HierarchyNode(resultSet.getLong("node_id"),
+                        root ? null : parentId,
+                        resultSet.getString("kind"),
+                        resultSet.getLong("ref_id"),
+                        resultSet.getString("name")));
+            }
+        }
+        return nodes;
+    }
+
+    private int readInt(String sql, HierarchyNode node) {
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (node != null) {
+                statement.setLong(1, node.getId());
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
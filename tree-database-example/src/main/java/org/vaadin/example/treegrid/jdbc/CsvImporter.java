@@ -0,0 +1,396 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk import of CSV files into the company, department and people tables.
+ * <p>
+ * Every file starts with a header line of column names, e.g.
+ * {@code id,department_id,first_name,last_name,email,gender} for
+ * {@code people.csv}. Fields may be quoted with double quotes, a doubled quote
+ * within a quoted field is a quote character. Files are memory-mapped and
+ * parsed directly from the mapped bytes: numeric columns are parsed without
+ * creating strings, and rows are inserted with batched prepared statements
+ * in a single transaction.
+ * <p>
+ * Run {@code CsvImporter <directory> [<jdbc url>]} to import into a database
+ * from the command line, or set system property {@value DBEngine#IMPORT_DIRECTORY_PROPERTY}
+ * to import into the demo database after the seed scripts.
+ */
+public class CsvImporter {
+
+    /**
+     * Tables in import order, parents before children
+     */
+    public static final List<String> TABLES = Arrays.asList("company", "department", "people");
+
+    private static final Logger LOGGER = Logger.getLogger(CsvImporter.class.getName());
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_FIELDS = 64;
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final DataSource dataSource;
+    private final long windowSize;
+
+    public CsvImporter(DataSource dataSource) {
+        this(dataSource, WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize bytes of a file mapped at a time, also the maximum
+     *                   length of a row
+     */
+    CsvImporter(DataSource dataSource, long windowSize) {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        this.dataSource = dataSource;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Imports {@code <table>.csv} files of the directory for every one of
+     * {@link #TABLES} which has one. Nothing is imported if any row fails.
+     * An existing {@link HierarchyIndex} is rebuilt afterwards.
+     *
+     * @return number of rows imported
+     */
+    public long importDirectory(Path directory) {
+        long start = System.nanoTime();
+        long rows = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (String table : TABLES) {
+                    Path file = directory.resolve(table + ".csv");
+                    if (Files.exists(file)) {
+                        rows += importFile(connection, table, file);
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            if (HierarchyIndex.exists(connection)) {
+                HierarchyIndex.build(connection);
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Import from " + directory + " failed", e);
+        }
+        report("all tables", rows, start);
+        return rows;
+    }
+
+    /**
+     * Inserts the rows of a CSV file within the transaction of the connection.
+     *
+     * @return number of rows inserted
+     */
+    long importFile(Connection connection, String table, Path file)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RowParser parser = new RowParser(channel, windowSize);
+            if (!parser.next()) {
+                return 0;
+            }
+            String columns = parser.headerColumns();
+            String parameters = Arrays.stream(columns.split(","))
+                    .map(column -> "?")
+                    .collect(Collectors.joining(","));
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO " + table + " (" + columns + ") VALUES (" + parameters + ")")) {
+                boolean[] numeric = numericParameters(statement.getParameterMetaData());
+                long rows = 0;
+                while (parser.next()) {
+                    parser.bind(statement, numeric);
+                    statement.addBatch();
+                    if (++rows % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+                report(table, rows, start);
+                return rows;
+            }
+        }
+    }
+
+    private static boolean[] numericParameters(ParameterMetaData metaData) throws SQLException {
+        boolean[] numeric = new boolean[metaData.getParameterCount()];
+        for (int i = 0; i < numeric.length; i++) {
+            switch (metaData.getParameterType(i + 1)) {
+                case Types.BIGINT:
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                    numeric[i] = true;
+                    break;
+                default:
+                    numeric[i] = false;
+            }
+        }
+        return numeric;
+    }
+
+    private static void report(String table, long rows, long start) {
+        long nanos = Math.max(1, System.nanoTime() - start);
+        LOGGER.info(String.format("Imported %d rows into %s in %d ms, %.0f rows/s",
+                rows, table, TimeUnit.NANOSECONDS.toMillis(nanos),
+                rows * 1e9 / nanos));
+    }
+
+    /**
+     * Splits a memory-mapped CSV file into rows and fields. The file is
+     * mapped in windows, a row crossing the end of a window is parsed again
+     * from the next window.
+     */
+    private static class RowParser {
+        private final FileChannel channel;
+        private final long windowSize;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowPosition;
+        private int limit;
+        private int position;
+        private long row;
+
+        private final int[] fieldStarts = new int[MAX_FIELDS];
+        private final int[] fieldEnds = new int[MAX_FIELDS];
+        private final boolean[] quoted = new boolean[MAX_FIELDS];
+        private int fieldCount;
+        private byte[] scratch = new byte[256];
+
+        RowParser(FileChannel channel, long windowSize) throws IOException {
+            this.channel = channel;
+            this.windowSize = windowSize;
+            size = channel.size();
+            map(0);
+        }
+
+        private void map(long from) throws IOException {
+            windowPosition = from;
+            limit = (int) Math.min(windowSize, size - from);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, from, limit);
+            position = 0;
+        }
+
+        /**
+         * Parses the next non-empty row.
+         *
+         * @return false at the end of the file
+         */
+        boolean next() throws IOException {
+            while (true) {
+                if (position >= limit) {
+                    if (windowPosition + limit >= size) {
+                        return false;
+                    }
+                    map(windowPosition + limit);
+                }
+                int rowStart = position;
+                if (parseRow()) {
+                    row++;
+                    if (fieldCount > 1 || fieldEnds[0] > fieldStarts[0]) {
+                        return true;
+                    }
+                } else if (rowStart == 0) {
+                    throw new IOException("Row " + (row + 1) + " is longer than " + windowSize + " bytes");
+                } else {
+                    map(windowPosition + rowStart);
+                }
+            }
+        }
+
+        /**
+         * @return false if the row does not end within the window
+         */
+        private boolean parseRow() {
+            boolean endOfFile = windowPosition + limit >= size;
+            boolean inQuotes = false;
+            fieldCount = 0;
+            startField(position);
+            for (int i = position; i < limit; i++) {
+                byte b = window.get(i);
+                if (inQuotes) {
+                    if (b == '"') {
+                        if (i + 1 < limit && window.get(i + 1) == '"') {
+                            i++;
+                        } else {
+                            inQuotes = false;
+                        }
+                    }
+                } else if (b == '"') {
+                    inQuotes = true;
+                    quoted[fieldCount] = true;
+                } else if (b == ',') {
+                    endField(i);
+                    startField(i + 1);
+                } else if (b == '\n') {
+                    endField(i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            if (!endOfFile) {
+                return false;
+            }
+            endField(limit);
+            position = limit;
+            return true;
+        }
+
+        private void startField(int start) {
+            if (fieldCount == MAX_FIELDS) {
+                throw new IllegalStateException("Row " + (row + 1) + " has more than " + MAX_FIELDS + " fields");
+            }
+            fieldStarts[fieldCount] = start;
+            quoted[fieldCount] = false;
+        }
+
+        private void endField(int end) {
+            // Lines may end with CR LF
+            if (end > fieldStarts[fieldCount] && window.get(end - 1) == '\r') {
+                end--;
+            }
+            fieldEnds[fieldCount++] = end;
+        }
+
+        String headerColumns() {
+            List<String> columns = new ArrayList<>();
+            for (int i = 0; i < fieldCount; i++) {
+                String column = text(i).trim();
+                if (!column.matches("\\w+")) {
+                    throw new IllegalArgumentException("Invalid column name: " + column);
+                }
+                columns.add(column);
+            }
+            return String.join(",", columns);
+        }
+
+        void bind(PreparedStatement statement, boolean[] numeric) throws SQLException {
+            if (fieldCount != numeric.length) {
+                throw new SQLException("Row " + row + " has " + fieldCount
+                        + " fields instead of " + numeric.length);
+            }
+            for (int i = 0; i < fieldCount; i++) {
+                if (fieldStarts[i] == fieldEnds[i]) {
+                    statement.setNull(i + 1, numeric[i] ? Types.BIGINT : Types.VARCHAR);
+                } else if (numeric[i] && !quoted[i]) {
+                    statement.setLong(i + 1, number(i));
+                } else {
+                    statement.setString(i + 1, text(i));
+                }
+            }
+        }
+
+        private long number(int field) throws SQLException {
+            int i = fieldStarts[field];
+            int end = fieldEnds[field];
+            boolean negative = window.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == end) {
+                throw new SQLException("Row " + row + ": not a number in field " + (field + 1));
+            }
+            // Accumulated with the sign, Long.MIN_VALUE has no positive
+            // counterpart
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = window.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new SQLException("Row " + row + ": not a number in field " + (field + 1));
+                }
+                try {
+                    value = Math.multiplyExact(value, 10);
+                    value = negative ? Math.subtractExact(value, digit) : Math.addExact(value, digit);
+                } catch (ArithmeticException e) {
+                    throw new SQLException("Row " + row + ": number out of range in field " + (field + 1), e);
+                }
+            }
+            return value;
+        }
+
+        private String text(int field) {
+            int start = fieldStarts[field];
+            int end = fieldEnds[field];
+            if (quoted[field]) {
+                // Only the quoted part counts, doubled quotes are unescaped
+                int length = 0;
+                boolean inQuotes = false;
+                ensureScratch(end - start);
+                for (int i = start; i < end; i++) {
+                    byte b = window.get(i);
+                    if (b != '"') {
+                        if (inQuotes) {
+                            scratch[length++] = b;
+                        }
+                    } else if (inQuotes && i + 1 < end && window.get(i + 1) == '"') {
+                        scratch[length++] = b;
+                        i++;
+                    } else {
+                        inQuotes = !inQuotes;
+                    }
+                }
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            ensureScratch(end - start);
+            for (int i = start; i < end; i++) {
+                scratch[i - start] = window.get(i);
+            }
+            return new String(scratch, 0, end - start, StandardCharsets.UTF_8);
+        }
+
+        private void ensureScratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: CsvImporter <directory> [<jdbc url>]");
+            System.exit(1);
+        }
+        if (args.length == 1) {
+            // Only measures the import, the in-memory demo database is
+            // discarded on exit
+            new CsvImporter(DBEngine.getDataSource()).importDirectory(Paths.get(args[0]));
+            return;
+        }
+        try (BasicDataSource dataSource = new BasicDataSource()) {
+            dataSource.setUrl(args[1]);
+            dataSource.setUsername("SA");
+            dataSource.setPassword("");
+            new CsvImporter(dataSource).importDirectory(Paths.get(args[0]));
+        }
+    }
+}
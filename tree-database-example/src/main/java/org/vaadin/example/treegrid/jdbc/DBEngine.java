@@ -3,23 +3,34 @@ package org.vaadin.example.treegrid.jdbc;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import javax.sql.DataSource;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Database support class.
  * HSQLDB in-memory database is used. The data is uploaded automatically when
- * the database is accessed for the very first time.
+ * the database is accessed for the very first time, tables are loaded in
+ * parallel if system property {@value #PARALLEL_LOAD_PROPERTY} is true. The
+ * load time is logged.
+ * <p>
+ * Larger hierarchies are imported from the CSV files in the directory given
+ * with system property {@value #IMPORT_DIRECTORY_PROPERTY}, see
+ * {@link CsvImporter}. With system property {@value #HIERARCHY_INDEX_PROPERTY}
+ * set to true the closure table of {@link HierarchyIndex} is built after
+ * loading.
  */
 @SuppressWarnings("WeakerAccess")
 public class DBEngine {
 
+    public static final String PARALLEL_LOAD_PROPERTY = "treegrid.parallelLoad";
+    public static final String IMPORT_DIRECTORY_PROPERTY = "treegrid.importDirectory";
+    public static final String HIERARCHY_INDEX_PROPERTY = "treegrid.hierarchyIndex";
+
+    private static final Logger LOGGER = Logger.getLogger(DBEngine.class.getName());
+
     private DBEngine() {
     }
 
@@ -40,38 +51,33 @@ public class DBEngine {
         dataSource.setUrl("jdbc:hsqldb:mem:peopledb");
         dataSource.setUsername("SA");
         dataSource.setPassword("");
+        uploadData(dataSource);
+        String importDirectory = System.getProperty(IMPORT_DIRECTORY_PROPERTY);
+        if (importDirectory != null) {
+            new CsvImporter(dataSource).importDirectory(Paths.get(importDirectory));
+        }
+        if (Boolean.getBoolean(HIERARCHY_INDEX_PROPERTY)) {
+            buildHierarchyIndex(dataSource);
+        }
+        return dataSource;
+    }
+
+    private static void buildHierarchyIndex(DataSource dataSource) {
+        long start = System.nanoTime();
         try (Connection connection = dataSource.getConnection()) {
-            uploadData(connection);
+            int nodes = HierarchyIndex.build(connection);
+            LOGGER.info(String.format("Hierarchy index built in %d ms, %d nodes",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), nodes));
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return dataSource;
     }
 
-    private static void uploadData(Connection connection) {
-        Stream.of("db_ddl.sql", "db_dml.sql").forEach(scriptName ->
-                {
-                    try (Statement statement = connection.createStatement();
-                         InputStream stream = DBEngine.class.getResourceAsStream(scriptName);
-                         Reader reader = new BufferedReader(new InputStreamReader(stream))) {
-                        StringBuilder text = new StringBuilder();
-                        for (int c; (c = reader.read()) >= 0; ) {
-                            if (c == ';') {
-                                statement.executeQuery(text.toString());
-                                text.setLength(0);
-                            } else {
-                                text.append((char) c);
-                            }
-                        }
-                        if (!"".equals(text.toString().trim())) {
-                            statement.executeQuery(text.toString());
-                        }
-
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-        );
-
+    private static void uploadData(DataSource dataSource) {
+        long start = System.nanoTime();
+        int statements = new ScriptLoader(dataSource, Boolean.getBoolean(PARALLEL_LOAD_PROPERTY))
+                .load("db_ddl.sql", "db_dml.sql");
+        LOGGER.info(String.format("Database loaded in %d ms, %d statements",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), statements));
     }
 }
@@ -0,0 +1,117 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Hierarchy index of arbitrary depth over the company, department and people
+ * tables, as a closure table.
+ * <p>
+ * {@code org_node} has a row for every node with its parent, {@code
+ * org_closure} a row for every pair of a node and one of its descendants,
+ * including the node itself at depth 0. Whole subtrees and subtree sizes are
+ * then single indexed queries, see {@link ClosureTableDataProvider}.
+ * <p>
+ * The index is rebuilt, never updated row by row: {@link DBEngine} builds it
+ * after loading the demo database and {@link CsvImporter} rebuilds an
+ * existing index after every import. Other changes of the entity tables are
+ * only indexed by the next {@link #build}.
+ */
+public final class HierarchyIndex {
+
+    public static final String COMPANY = "COMPANY";
+    public static final String DEPARTMENT = "DEPARTMENT";
+    public static final String PERSON = "PERSON";
+
+    /**
+     * Full name of a person, either part may be missing
+     */
+    private static final String PERSON_NAME =
+            "TRIM(COALESCE(p.first_name, '') || ' ' || COALESCE(p.last_name, ''))";
+
+    private HierarchyIndex() {
+    }
+
+    /**
+     * Creates the index tables unless they exist and fills them from the
+     * entity tables, replacing any earlier content.
+     *
+     * @return number of indexed nodes
+     */
+    public static int build(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        try (Statement statement = connection.createStatement()) {
+            createTables(statement);
+            connection.setAutoCommit(false);
+            statement.executeUpdate("DELETE FROM org_closure");
+            statement.executeUpdate("DELETE FROM org_node");
+            statement.executeUpdate("INSERT INTO org_node (parent_id, kind, ref_id, name)"
+                    + " SELECT NULL, '" + COMPANY + "', company_id, company_name FROM company"
+                    + " ORDER BY company_id");
+            statement.executeUpdate("INSERT INTO org_node (parent_id, kind, ref_id, name)"
+                    + " SELECT n.node_id, '" + DEPARTMENT + "', d.department_id, d.department_name"
+                    + " FROM department d JOIN org_node n ON n.kind = '" + COMPANY + "' AND n.ref_id = d.company_id"
+                    + " ORDER BY d.department_id");
+            statement.executeUpdate("INSERT INTO org_node (parent_id, kind, ref_id, name)"
+                    + " SELECT n.node_id, '" + PERSON + "', p.id, " + PERSON_NAME
+                    + " FROM people p JOIN org_node n ON n.kind = '" + DEPARTMENT + "' AND n.ref_id = p.department_id"
+                    + " ORDER BY p.id");
+            int nodes = statement.executeUpdate("INSERT INTO org_closure (ancestor, descendant, depth)"
+                    + " SELECT node_id, node_id, 0 FROM org_node");
+            // One level of descendants per round, for any depth
+            try (PreparedStatement deeper = connection.prepareStatement(
+                    "INSERT INTO org_closure (ancestor, descendant, depth)"
+                            + " SELECT c.ancestor, n.node_id, c.depth + 1"
+                            + " FROM org_closure c JOIN org_node n ON n.parent_id = c.descendant"
+                            + " WHERE c.depth = ?")) {
+                for (int depth = 0; ; depth++) {
+                    deeper.setInt(1, depth);
+                    if (deeper.executeUpdate() == 0) {
+                        break;
+                    }
+                }
+            }
+            connection.commit();
+            return nodes;
+        } catch (SQLException e) {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @return whether the index tables exist, i.e. the index has been built
+     */
+    public static boolean exists(Connection connection) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, "ORG_NODE", null)) {
+            return tables.next();
+        }
+    }
+
+    private static void createTables(Statement statement) throws SQLException {
+        if (exists(statement.getConnection())) {
+            return;
+        }
+        statement.execute("CREATE TABLE org_node ("
+                + " node_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " parent_id BIGINT,"
+                + " kind VARCHAR(20) NOT NULL,"
+                + " ref_id BIGINT NOT NULL,"
+                + " name VARCHAR(101),"
+                + " UNIQUE (kind, ref_id))");
+        statement.execute("CREATE INDEX org_node_parent ON org_node (parent_id, node_id)");
+        statement.execute("CREATE TABLE org_closure ("
+                + " ancestor BIGINT NOT NULL,"
+                + " descendant BIGINT NOT NULL,"
+                + " depth INTEGER NOT NULL,"
+                + " PRIMARY KEY (ancestor, descendant))");
+        statement.execute("CREATE INDEX org_closure_descendant ON org_closure (descendant, depth)");
+    }
+}
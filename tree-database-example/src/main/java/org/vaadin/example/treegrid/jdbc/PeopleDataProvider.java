@@ -2,16 +2,26 @@ package org.vaadin.example.treegrid.jdbc;
 
 import com.vaadin.data.provider.AbstractBackEndHierarchicalDataProvider;
 import com.vaadin.data.provider.HierarchicalQuery;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinService;
 import org.vaadin.example.treegrid.jdbc.pojo.Company;
 import org.vaadin.example.treegrid.jdbc.pojo.Department;
 import org.vaadin.example.treegrid.jdbc.pojo.NamedItem;
 import org.vaadin.example.treegrid.jdbc.pojo.Person;
 
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -19,20 +29,169 @@ import java.util.stream.Stream;
  */
 public class PeopleDataProvider extends AbstractBackEndHierarchicalDataProvider<NamedItem, Void> {
 
+    public static final int DEFAULT_MAX_CACHED_COUNTS = 100_000;
+
+    private static final Object ROOT_ID = "";
+
+    /**
+     * Maximum number of parents of a prefetch query
+     */
+    public static final int PREFETCH_BATCH_SIZE = 500;
+
+    /**
+     * Maximum number of children of a parent whose children are prefetched,
+     * about the first page of a component
+     */
+    public static final int PREFETCH_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_ENDS = 1000;
+
+    private static final String PERSON_COLUMNS = "id, department_id, first_name, last_name, gender";
+    private static final String DEPARTMENT_COLUMNS = "department_id, company_id, department_name";
+    private static final String COMPANY_COLUMNS = "company_id, company_name";
+
+    private static final DataRetriever<NamedItem> DEPARTMENT_RETRIEVER = resultSet -> new Department(
+            resultSet.getLong("department_id"),
+            resultSet.getLong("company_id"),
+            resultSet.getString("department_name"));
+
+    private volatile boolean emailsLoaded = true;
+
+    private final ChildCountCache childCounts;
+
+    /*
+     * Offset and last id of the latest page read of every parent, for
+     * continuing with the next page
+     */
+    private final Map<Object, PageEnd> pageEnds = new LinkedHashMap<Object, PageEnd>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, PageEnd> eldest) {
+            return size() > MAX_PAGE_ENDS;
+        }
+    };
+
+    /*
+     * Children read within a request, a provider is used by a single UI so
+     * requests do not overlap
+     */
+    private final Map<Object, List<NamedItem>> requestChildren = new HashMap<>();
+    private WeakReference<VaadinRequest> childrenRequest = new WeakReference<>(null);
+
+    /*
+     * Parents whose children were counted within the request, i.e. expanded
+     * ones, and whose children have not been read yet
+     */
+    private final Map<Object, NamedItem> pendingParents = new LinkedHashMap<>();
+
+    public PeopleDataProvider() {
+        this(DEFAULT_MAX_CACHED_COUNTS);
+    }
+
+    /**
+     * @param maxCachedCounts maximum number of child counts kept in memory
+     */
+    public PeopleDataProvider(int maxCachedCounts) {
+        childCounts = new ChildCountCache(maxCachedCounts);
+    }
+
+    /**
+     * Child counts are cached. A missing count is read with the counts of all
+     * siblings in a single grouped query, so rendering the expand arrows of a
+     * level takes one query.
+     * <p>
+     * The components count the children of a parent when it is expanded, so
+     * within a Vaadin request the counted parents are remembered. The first
+     * of them whose children are fetched has the children of all of them
+     * prefetched, see {@link #prefetchChildren(Collection)}.
+     */
     @Override
     public int getChildCount(HierarchicalQuery<NamedItem, Void> query) {
         NamedItem parent = query.getParent();
-        int count;
+        if (parent instanceof Department || parent instanceof Company) {
+            Map<Object, List<NamedItem>> cachedChildren = requestChildren();
+            Object id = getId(parent);
+            if (cachedChildren != null && !cachedChildren.containsKey(id)) {
+                pendingParents.put(id, parent);
+            }
+        }
+        return Math.max(0, childCount(parent) - query.getOffset());
+    }
+
+    private int childCount(NamedItem parent) {
         if (parent instanceof Person) {
             return 0;
-        } else if (parent instanceof Department) {
-            count = readInt("SELECT COUNT(*) FROM people WHERE department_id=?", parent);
+        }
+        Object id = parent == null ? ROOT_ID : getId(parent);
+        return childCounts.get(id, key -> readChildCounts(parent));
+    }
+
+    private Map<Object, Integer> readChildCounts(NamedItem parent) {
+        if (parent instanceof Department) {
+            return readCounts(Department.class,
+                    "SELECT d.department_id, COUNT(p.id) FROM department d"
+                            + " LEFT JOIN people p ON p.department_id = d.department_id"
+                            + " WHERE d.company_id = ? GROUP BY d.department_id",
+                    ((Department) parent).getCompanyId());
         } else if (parent instanceof Company) {
-            count = readInt("SELECT COUNT(*) FROM department WHERE company_id=?", parent);
+            return readCounts(Company.class,
+                    "SELECT c.company_id, COUNT(d.department_id) FROM company c"
+                            + " LEFT JOIN department d ON d.company_id = c.company_id"
+                            + " GROUP BY c.company_id",
+                    null);
         } else {
-            count = readInt("SELECT COUNT(*) FROM company", null);
+            return Collections.singletonMap(ROOT_ID,
+                    readInt("SELECT COUNT(*) FROM company", null));
         }
-        return count - query.getOffset();
+    }
+
+    private Map<Object, Integer> readCounts(Class<? extends NamedItem> type, String sql, Long parentId) {
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (parentId != null) statement.setLong(1, parentId);
+            Map<Object, Integer> counts = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    counts.put(idOf(type, resultSet.getLong(1)), resultSet.getInt(2));
+                }
+            }
+            return counts;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops the cached child count of an item, or the count of companies for
+     * null.
+     */
+    public void invalidateChildCount(NamedItem item) {
+        childCounts.invalidate(item == null ? ROOT_ID : getId(item));
+    }
+
+    public void invalidateChildCounts() {
+        childCounts.invalidateAll();
+    }
+
+    @Override
+    public void refreshAll() {
+        requestChildren.clear();
+        pendingParents.clear();
+        synchronized (pageEnds) {
+            pageEnds.clear();
+        }
+        invalidateChildCounts();
+        super.refreshAll();
+    }
+
+    @Override
+    public void refreshItem(NamedItem item) {
+        requestChildren.remove(getId(item));
+        pendingParents.remove(getId(item));
+        synchronized (pageEnds) {
+            pageEnds.remove(getId(item));
+        }
+        invalidateChildCount(item);
+        super.refreshItem(item);
     }
 
     @Override
@@ -41,74 +200,301 @@ public class PeopleDataProvider extends AbstractBackEndHierarchicalDataProvider<
         if (parent instanceof Person) {
             return Stream.empty();
         }
+        Map<Object, List<NamedItem>> cachedChildren = requestChildren();
+        Object parentId = parent == null ? ROOT_ID : getId(parent);
+        if (cachedChildren != null) {
+            if (query.getOffset() == 0 && pendingParents.containsKey(parentId)) {
+                // Children of all the parents expanded within the request
+                // with a few batched queries, instead of one query each
+                List<NamedItem> pending = new ArrayList<>(pendingParents.values());
+                pendingParents.clear();
+                prefetchChildren(pending);
+            }
+            List<NamedItem> children = cachedChildren.get(parentId);
+            if (children != null) {
+                return children.stream().skip(query.getOffset()).limit(query.getLimit());
+            }
+        }
         DataRetriever<NamedItem> retriever;
-        String sql;
+        String table;
+        String parentColumn;
+        String keyColumn;
+        String columns;
+        boolean withEmails = emailsLoaded;
         if (parent instanceof Department) {
-            sql = "SELECT * FROM people WHERE department_id=?";
-            retriever = resultSet -> new Person(resultSet.getLong("id"),
-                    resultSet.getLong("department_id"),
-                    resultSet.getString("first_name"),
-                    resultSet.getString("last_name"),
-                    resultSet.getString("email"),
-                    resultSet.getString("gender")
-            );
+            table = "people";
+            parentColumn = "department_id";
+            keyColumn = "id";
+            columns = personColumns(withEmails);
+            retriever = personRetriever(withEmails);
         } else if (parent instanceof Company) {
-            sql = "SELECT * FROM department WHERE company_id=?";
-            retriever = resultSet -> new Department(
-                    resultSet.getLong("department_id"),
-                    resultSet.getLong("company_id"),
-                    resultSet.getString("department_name"));
+            table = "department";
+            parentColumn = "company_id";
+            keyColumn = "department_id";
+            columns = DEPARTMENT_COLUMNS;
+            retriever = DEPARTMENT_RETRIEVER;
         } else {
-            sql = "SELECT * FROM company";
-            retriever = resultSet -> new Company(resultSet.getLong("company_id"),
-                    resultSet.getString("company_name"),
-                    resultSet.getString("company_email"));
+            table = "company";
+            parentColumn = null;
+            keyColumn = "company_id";
+            columns = companyColumns(withEmails);
+            retriever = companyRetriever(withEmails);
+        }
+        List<NamedItem> children = readChildren(query, parentId, table, columns, parentColumn, keyColumn, retriever);
+        if (cachedChildren != null && query.getOffset() == 0 && children.size() < query.getLimit()) {
+            // All the children, e.g. the mirrored Tree expands the same item
+            // within the request
+            cachedChildren.put(parentId, children);
+        }
+        return children.stream();
+    }
+
+    /**
+     * Prepares expanding all the given departments or companies with a few
+     * queries per type and batch of {@value #PREFETCH_BATCH_SIZE} parents,
+     * e.g. before expanding them all. The child counts of all the parents are
+     * read with one grouped query and cached, unless they are cached already. Parents with at most
+     * {@value #PREFETCH_PAGE_SIZE} children, which fit on the first page
+     * anyway, have their children read with one WHERE ... IN (...) query and
+     * served from memory until the end of the current request. Children of
+     * larger parents are left to the paged queries of the components.
+     * Outside of a Vaadin request nothing is prefetched.
+     */
+    public void prefetchChildren(Collection<? extends NamedItem> parents) {
+        Map<Object, List<NamedItem>> cachedChildren = requestChildren();
+        if (cachedChildren == null) {
+            return;
         }
+        List<Long> departmentIds = new ArrayList<>();
+        List<Long> companyIds = new ArrayList<>();
+        for (NamedItem parent : parents) {
+            if (cachedChildren.containsKey(getId(parent))) {
+                continue;
+            }
+            if (parent instanceof Department) {
+                departmentIds.add(parent.getId());
+            } else if (parent instanceof Company) {
+                companyIds.add(parent.getId());
+            }
+        }
+        boolean withEmails = emailsLoaded;
+        prefetch(cachedChildren, Department.class, departmentIds,
+                "SELECT department_id, COUNT(*) FROM people WHERE department_id IN (%s) GROUP BY department_id",
+                "SELECT " + personColumns(withEmails) + " FROM people WHERE department_id IN (%s) ORDER BY department_id, id",
+                "department_id", personRetriever(withEmails));
+        prefetch(cachedChildren, Company.class, companyIds,
+                "SELECT company_id, COUNT(*) FROM department WHERE company_id IN (%s) GROUP BY company_id",
+                "SELECT " + DEPARTMENT_COLUMNS + " FROM department WHERE company_id IN (%s) ORDER BY company_id, department_id",
+                "company_id", DEPARTMENT_RETRIEVER);
+    }
+
+    private void prefetch(Map<Object, List<NamedItem>> cachedChildren,
+                          Class<? extends NamedItem> parentType, List<Long> parentIds,
+                          String countSqlTemplate, String sqlTemplate, String parentColumn,
+                          DataRetriever<NamedItem> retriever) {
+        for (int from = 0; from < parentIds.size(); from += PREFETCH_BATCH_SIZE) {
+            List<Long> batch = parentIds.subList(from, Math.min(from + PREFETCH_BATCH_SIZE, parentIds.size()));
+            Map<Long, Integer> counts = new HashMap<>();
+            List<Long> uncounted = new ArrayList<>();
+            for (Long parentId : batch) {
+                Integer count = childCounts.getIfCached(idOf(parentType, parentId));
+                if (count == null) {
+                    uncounted.add(parentId);
+                } else {
+                    counts.put(parentId, count);
+                }
+            }
+            if (!uncounted.isEmpty()) {
+                readIn(countSqlTemplate, uncounted, resultSet -> counts.put(resultSet.getLong(1), resultSet.getInt(2)));
+            }
+            Map<Object, List<NamedItem>> children = new HashMap<>();
+            List<Long> smallParents = new ArrayList<>();
+            for (Long parentId : batch) {
+                int count = counts.getOrDefault(parentId, 0);
+                childCounts.put(idOf(parentType, parentId), count);
+                if (count <= PREFETCH_PAGE_SIZE) {
+                    children.put(idOf(parentType, parentId), new ArrayList<>());
+                    if (count > 0) {
+                        smallParents.add(parentId);
+                    }
+                }
+            }
+            if (!smallParents.isEmpty()) {
+                readIn(sqlTemplate, smallParents, resultSet -> children
+                        .get(idOf(parentType, resultSet.getLong(parentColumn)))
+                        .add(retriever.readRow(resultSet)));
+            }
+            cachedChildren.putAll(children);
+        }
+    }
+
+    /**
+     * Runs a query with the given ids in place of the %s of its IN clause.
+     */
+    private static void readIn(String sqlTemplate, List<Long> ids, DataRetriever<?> rowHandler) {
+        String sql = String.format(sqlTemplate,
+                ids.stream().map(id -> "?").collect(Collectors.joining(",")));
         try (Connection connection = DBEngine.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
-            if (parent != null) {
-                statement.setLong(1, parent.getId());
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setLong(i + 1, ids.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rowHandler.readRow(resultSet);
+                }
             }
-
-            return readResultSet(query, retriever, statement);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private Stream<NamedItem> readResultSet(HierarchicalQuery<NamedItem, Void> query, DataRetriever<NamedItem> retriever, PreparedStatement statement) throws SQLException {
-        try (ResultSet resultSet = statement.executeQuery()) {
-            safeSkipRows(resultSet, query.getOffset());
-            if (resultSet.isAfterLast()) {
-                return Stream.empty();
+    /**
+     * @return children cached during the current request by parent id, null
+     * outside of requests
+     */
+    private Map<Object, List<NamedItem>> requestChildren() {
+        VaadinRequest request = VaadinService.getCurrentRequest();
+        if (request == null) {
+            return null;
+        }
+        if (childrenRequest.get() != request) {
+            childrenRequest = new WeakReference<>(request);
+            requestChildren.clear();
+            pendingParents.clear();
+        }
+        return requestChildren;
+    }
+
+    /**
+     * Reads a page of children ordered by id, the database skips and limits
+     * the rows. A page which continues the previous page of the same parent
+     * starts after the last id of that page instead of skipping rows, so
+     * scrolling through a large department costs the same on every page.
+     */
+    private List<NamedItem> readChildren(HierarchicalQuery<NamedItem, Void> query, Object parentId,
+                                         String table, String columns, String parentColumn, String keyColumn,
+                                         DataRetriever<NamedItem> retriever) {
+        int offset = query.getOffset();
+        Long lastKey = null;
+        synchronized (pageEnds) {
+            PageEnd pageEnd = pageEnds.get(parentId);
+            if (offset > 0 && pageEnd != null && pageEnd.offset == offset) {
+                lastKey = pageEnd.key;
             }
-            Stream.Builder<NamedItem> builder = Stream.builder();
-            int limit = query.getLimit();
-            for (int i = 0; i < limit && resultSet.next(); i++) {
-                builder.add(retriever.readRow(resultSet));
+        }
+        List<String> conditions = new ArrayList<>();
+        List<Long> parameters = new ArrayList<>();
+        if (parentColumn != null) {
+            conditions.add(parentColumn + "=?");
+            parameters.add(query.getParent().getId());
+        }
+        if (lastKey != null) {
+            conditions.add(keyColumn + ">?");
+            parameters.add(lastKey);
+        }
+        String sql = "SELECT " + columns + " FROM " + table
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY " + keyColumn
+                + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+        List<NamedItem> children = new ArrayList<>();
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (Long parameter : parameters) {
+                statement.setLong(index++, parameter);
             }
-            return builder.build();
+            statement.setInt(index++, lastKey == null ? offset : 0);
+            statement.setInt(index, query.getLimit());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    children.add(retriever.readRow(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
+        if (!children.isEmpty()) {
+            synchronized (pageEnds) {
+                pageEnds.put(parentId, new PageEnd(offset + children.size(),
+                        children.get(children.size() - 1).getId()));
+            }
+        }
+        return children;
     }
 
-    private void safeSkipRows(ResultSet resultSet, int skipRowCount) throws SQLException {
-        try {
-            resultSet.relative(skipRowCount);
-        } catch (SQLFeatureNotSupportedException e) {
-            for (int i = 0; i < skipRowCount; i++) {
-                if (!resultSet.next()) return;
-            }
+    private static class PageEnd {
+        private final int offset;
+        private final long key;
+
+        private PageEnd(int offset, long key) {
+            this.offset = offset;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Projection mode: without emails, rows are read without the email
+     * columns of people and companies, and their emails are null. The other
+     * columns are what a Tree of the items renders, names and the icons
+     * by gender. Emails are loaded by switching them on again, which
+     * refreshes the provider, e.g. when an email column is shown.
+     */
+    public void setEmailsLoaded(boolean emailsLoaded) {
+        if (this.emailsLoaded != emailsLoaded) {
+            this.emailsLoaded = emailsLoaded;
+            refreshAll();
         }
     }
 
+    public boolean isEmailsLoaded() {
+        return emailsLoaded;
+    }
+
+    private static String personColumns(boolean withEmail) {
+        return withEmail ? PERSON_COLUMNS + ", email" : PERSON_COLUMNS;
+    }
+
+    private static String companyColumns(boolean withEmail) {
+        return withEmail ? COMPANY_COLUMNS + ", company_email" : COMPANY_COLUMNS;
+    }
+
+    private static DataRetriever<NamedItem> personRetriever(boolean withEmail) {
+        return resultSet -> new Person(resultSet.getLong("id"),
+                resultSet.getLong("department_id"),
+                resultSet.getString("first_name"),
+                resultSet.getString("last_name"),
+                withEmail ? resultSet.getString("email") : null,
+                intern(resultSet.getString("gender"))
+        );
+    }
+
+    private static DataRetriever<NamedItem> companyRetriever(boolean withEmail) {
+        return resultSet -> new Company(resultSet.getLong("company_id"),
+                resultSet.getString("company_name"),
+                withEmail ? resultSet.getString("company_email") : null);
+    }
+
+    /**
+     * Shares the instances of the few distinct genders among all people.
+     */
+    private static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+
     @Override
     public boolean hasChildren(NamedItem item) {
-        return getChildCount(new HierarchicalQuery<>(null, item)) > 0;
+        // Asked for every rendered item, which is not expanded by that
+        return childCount(item) > 0;
     }
 
     @Override
     public Object getId(NamedItem item) {
-        return item.getClass().getCanonicalName() + item.getId();
+        return idOf(item.getClass(), item.getId());
+    }
+
+    private static Object idOf(Class<? extends NamedItem> type, long id) {
+        return type.getCanonicalName() + id;
     }
 
     @FunctionalInterface
@@ -0,0 +1,291 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads SQL scripts from class path resources. Statements are separated by
+ * semicolons outside of quotes, {@code --} line comments and block
+ * comments, INSERT statements are executed in JDBC batches.
+ * <p>
+ * In parallel mode the INSERT statements of every table are loaded
+ * concurrently, each table over its own connection. Referential integrity is
+ * not checked meanwhile, so the scripts must be consistent. The switch is
+ * database wide: while the loads run, foreign keys are not checked for any
+ * other session of the database either, so parallel mode is only meant for
+ * a database which is not in use yet. Checks are turned back on as soon as
+ * the loads have ended, whether they failed or not.
+ */
+class ScriptLoader {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 8192;
+    private static final Pattern INSERT = Pattern.compile(
+            "INSERT\\s+INTO\\s+([\\w.\"]+)", Pattern.CASE_INSENSITIVE);
+
+    private final DataSource dataSource;
+    private final boolean parallel;
+    private int statementCount;
+
+    ScriptLoader(DataSource dataSource, boolean parallel) {
+        this.dataSource = dataSource;
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return number of statements executed
+     */
+    int load(String... scriptNames) {
+        statementCount = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            for (String scriptName : scriptNames) {
+                try (InputStream stream = DBEngine.class.getResourceAsStream(scriptName);
+                     Reader reader = new BufferedReader(new InputStreamReader(stream,
+                             StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                    if (parallel) {
+                        loadParallel(connection, reader);
+                    } else {
+                        loadSequential(connection, reader);
+                    }
+                }
+            }
+        } catch (IOException | SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return statementCount;
+    }
+
+    private void loadSequential(Connection connection, Reader reader)
+            throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            List<String> batch = new ArrayList<>();
+            readStatements(reader, sql -> {
+                try {
+                    if (tableOf(sql) != null) {
+                        batch.add(sql);
+                        if (batch.size() == BATCH_SIZE) {
+                            executeBatch(statement, batch);
+                        }
+                    } else {
+                        executeBatch(statement, batch);
+                        execute(statement, sql);
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException("Statement failed: " + sql, e);
+                }
+            });
+            executeBatch(statement, batch);
+            connection.commit();
+        }
+    }
+
+    private void loadParallel(Connection connection, Reader reader)
+            throws IOException, SQLException {
+        Map<String, List<String>> inserts = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            readStatements(reader, sql -> {
+                String table = tableOf(sql);
+                if (table != null) {
+                    inserts.computeIfAbsent(table, key -> new ArrayList<>())
+                            .add(sql);
+                    return;
+                }
+                try {
+                    // Statements which are not INSERTs keep their order
+                    // relative to the INSERTs before them
+                    insertAll(statement, inserts);
+                    execute(statement, sql);
+                } catch (SQLException e) {
+                    throw new RuntimeException("Statement failed: " + sql, e);
+                }
+            });
+            insertAll(statement, inserts);
+            // Statements after the last INSERTs
+            connection.commit();
+        }
+    }
+
+    private void insertAll(Statement statement,
+            Map<String, List<String>> inserts) throws SQLException {
+        if (inserts.isEmpty()) {
+            return;
+        }
+        statement.getConnection().commit();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+                inserts.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            statement.execute("SET DATABASE REFERENTIAL INTEGRITY FALSE");
+            List<Future<?>> tables = new ArrayList<>();
+            for (List<String> tableInserts : inserts.values()) {
+                tables.add(executor.submit(() -> {
+                    insertTable(tableInserts);
+                    return null;
+                }));
+            }
+            for (Future<?> table : tables) {
+                table.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Loading interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Loading failed", e.getCause());
+        } finally {
+            // Loads of other tables must not outlive a failed one
+            executor.shutdownNow();
+            awaitTermination(executor);
+            statement.execute("SET DATABASE REFERENTIAL INTEGRITY TRUE");
+        }
+        for (List<String> tableInserts : inserts.values()) {
+            statementCount += tableInserts.size();
+        }
+        inserts.clear();
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void insertTable(List<String> inserts) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < inserts.size(); i++) {
+                statement.addBatch(inserts.get(i));
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        }
+    }
+
+    private void executeBatch(Statement statement, List<String> batch)
+            throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (String sql : batch) {
+            statement.addBatch(sql);
+        }
+        statement.executeBatch();
+        statementCount += batch.size();
+        batch.clear();
+    }
+
+    private void execute(Statement statement, String sql) throws SQLException {
+        statement.execute(sql);
+        statementCount++;
+    }
+
+    /**
+     * @return upper case name of the table an INSERT statement inserts into,
+     * null for other statements
+     */
+    static String tableOf(String sql) {
+        Matcher matcher = INSERT.matcher(sql);
+        return matcher.lookingAt() ? matcher.group(1).toUpperCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Splits a script into statements at semicolons which are not inside
+     * quoted strings, quoted identifiers, line comments or block comments.
+     * Block comments do not nest. Statements are passed to the consumer
+     * trimmed, comments are dropped.
+     */
+    static void readStatements(Reader reader, Consumer<String> consumer)
+            throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder text = new StringBuilder();
+        char quote = 0;
+        boolean lineComment = false;
+        boolean blockComment = false;
+        char previous = 0;
+        for (int length; (length = reader.read(buffer)) >= 0; ) {
+            for (int i = 0; i < length; i++) {
+                char c = buffer[i];
+                if (lineComment) {
+                    if (c == '\n') {
+                        lineComment = false;
+                        text.append(c);
+                    }
+                } else if (blockComment) {
+                    if (c == '/' && previous == '*') {
+                        blockComment = false;
+                        // Keeps the tokens around the comment apart
+                        text.append(' ');
+                        // The slash does not start another comment
+                        c = 0;
+                    }
+                } else if (quote != 0) {
+                    // A doubled quote is an escaped one, the state toggles
+                    // out and in again
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                    text.append(c);
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                    text.append(c);
+                } else if (c == '-' && previous == '-') {
+                    lineComment = true;
+                    text.setLength(text.length() - 1);
+                } else if (c == '*' && previous == '/') {
+                    blockComment = true;
+                    text.setLength(text.length() - 1);
+                    // The star does not end the comment
+                    c = 0;
+                } else if (c == ';') {
+                    emit(text, consumer);
+                } else {
+                    text.append(c);
+                }
+                previous = lineComment ? 0 : c;
+            }
+        }
+        emit(text, consumer);
+    }
+
+    private static void emit(StringBuilder text, Consumer<String> consumer) {
+        String sql = text.toString().trim();
+        if (!sql.isEmpty()) {
+            consumer.accept(sql);
+        }
+        text.setLength(0);
+    }
+}
@@ -2,10 +2,14 @@ package org.vaadin.example.treegrid.jdbc;
 
 import com.vaadin.annotations.VaadinServletConfiguration;
 import com.vaadin.data.ValueProvider;
+import com.vaadin.data.provider.HierarchicalDataProvider;
+import com.vaadin.data.provider.HierarchicalQuery;
 import com.vaadin.icons.VaadinIcons;
 import com.vaadin.server.Resource;
+import com.vaadin.server.SerializableConsumer;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinServlet;
+import com.vaadin.ui.Button;
 import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.IconGenerator;
 import com.vaadin.ui.Panel;
@@ -14,62 +18,113 @@ import com.vaadin.ui.TreeGrid;
 import com.vaadin.ui.UI;
 import org.vaadin.example.treegrid.jdbc.pojo.Company;
 import org.vaadin.example.treegrid.jdbc.pojo.Department;
+import org.vaadin.example.treegrid.jdbc.pojo.HierarchyNode;
 import org.vaadin.example.treegrid.jdbc.pojo.NamedItem;
 import org.vaadin.example.treegrid.jdbc.pojo.Person;
 
 import javax.servlet.annotation.WebServlet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
- * This UI is the application entry point.
+ * This UI is the application entry point. With system property
+ * {@value DBEngine#HIERARCHY_INDEX_PROPERTY} set to true the trees show the
+ * nodes of the hierarchy index instead of the entity tables.
  */
 @SuppressWarnings("unused")
 public class TreeUI extends UI {
 
+    private static final String EMAIL_COLUMN_ID = "email";
+
     @Override
     protected void init(VaadinRequest vaadinRequest) {
         final HorizontalLayout layout = new HorizontalLayout();
         layout.setMargin(true);
         layout.setSizeFull();
-        TreeGrid<NamedItem> treeGrid = setupTreeGrid();
+        if (Boolean.getBoolean(DBEngine.HIERARCHY_INDEX_PROPERTY)) {
+            // Nodes of any depth from the closure table of the hierarchy index
+            ClosureTableDataProvider dataProvider = new ClosureTableDataProvider();
+            addTrees(layout, dataProvider, treeGrid -> treeGrid.expand(dataProvider.fetchBranches()));
+        } else {
+            // Both components share the provider, so that mirrored expansions
+            // are served from the children read within the request
+            PeopleDataProvider dataProvider = new PeopleDataProvider();
+            TreeGrid<NamedItem> treeGrid = addTrees(layout, dataProvider,
+                    grid -> expandAll(grid, dataProvider));
+            // Emails are read only while the column is shown
+            dataProvider.setEmailsLoaded(false);
+            treeGrid.addColumnVisibilityChangeListener(event -> {
+                if (EMAIL_COLUMN_ID.equals(event.getColumn().getId())) {
+                    dataProvider.setEmailsLoaded(!event.isHidden());
+                }
+            });
+        }
+        setContent(layout);
+    }
+
+    private <T extends NamedItem> TreeGrid<T> addTrees(HorizontalLayout layout,
+                                                       HierarchicalDataProvider<T, Void> dataProvider,
+                                                       SerializableConsumer<TreeGrid<T>> expandAll) {
+        TreeGrid<T> treeGrid = setupTreeGrid(dataProvider);
         treeGrid.setHeight("50%");
 
-        Tree<NamedItem> tree = setupTree();
+        Tree<T> tree = setupTree(dataProvider);
         Panel treePanel = new Panel(tree);
         treePanel.setHeight("50%");
 
+        Button expandAllButton = new Button("Expand all", event -> expandAll.accept(treeGrid));
+        layout.addComponent(expandAllButton);
         layout.addComponentsAndExpand(treeGrid, treePanel);
 
         /* Next four listeners keep Tree and TreeGrid in sync - folders are open
         and closed synchronously in both components*/
-        treeGrid.addExpandListener(expandEvent -> tree.expand(expandEvent.getExpandedItem()));
-        treeGrid.addCollapseListener(expandEvent -> tree.collapse(expandEvent.getCollapsedItem()));
+        treeGrid.addExpandListener(expandEvent -> tree.expand(Collections.singleton(expandEvent.getExpandedItem())));
+        treeGrid.addCollapseListener(expandEvent -> tree.collapse(Collections.singleton(expandEvent.getCollapsedItem())));
 
-        tree.addExpandListener(expandEvent -> treeGrid.expand(expandEvent.getExpandedItem()));
-        tree.addCollapseListener(expandEvent -> treeGrid.collapse(expandEvent.getCollapsedItem()));
+        tree.addExpandListener(expandEvent -> treeGrid.expand(Collections.singleton(expandEvent.getExpandedItem())));
+        tree.addCollapseListener(expandEvent -> treeGrid.collapse(Collections.singleton(expandEvent.getCollapsedItem())));
+        return treeGrid;
+    }
 
-        setContent(layout);
+    /**
+     * Expands companies and departments. The child counts of each level and
+     * the children of small parents are read with a few batched queries,
+     * the people of large departments are paged in as they are shown.
+     */
+    private static void expandAll(TreeGrid<NamedItem> treeGrid, PeopleDataProvider dataProvider) {
+        List<NamedItem> companies = dataProvider.fetchChildren(new HierarchicalQuery<>(null, null))
+                .collect(Collectors.toList());
+        dataProvider.prefetchChildren(companies);
+        List<NamedItem> departments = companies.stream()
+                .flatMap(company -> dataProvider.fetchChildren(new HierarchicalQuery<>(null, company)))
+                .collect(Collectors.toList());
+        dataProvider.prefetchChildren(departments);
+        treeGrid.expand(companies);
+        treeGrid.expand(departments);
     }
 
-    private TreeGrid<NamedItem> setupTreeGrid() {
-        TreeGrid<NamedItem> treeGrid = new TreeGrid<>();
+    private <T extends NamedItem> TreeGrid<T> setupTreeGrid(HierarchicalDataProvider<T, Void> dataProvider) {
+        TreeGrid<T> treeGrid = new TreeGrid<>();
 
         treeGrid.addColumn(NamedItem::getName).setId("name").setCaption("Name");
         treeGrid.setHierarchyColumn("name");
 
         treeGrid.addColumn(ofPerson(Person::getFirstName)).setCaption("First Name");
         treeGrid.addColumn(ofPerson(Person::getLastName)).setCaption("Last Name");
-        treeGrid.addColumn(new EmailGenerator()).setCaption("e-mail");
+        treeGrid.addColumn(new EmailGenerator()::apply).setId(EMAIL_COLUMN_ID)
+                .setCaption("e-mail").setHidable(true).setHidden(true);
         treeGrid.addColumn(ofPerson(Person::getGender)).setCaption("Gender");
-        treeGrid.setDataProvider(new PeopleDataProvider());
+        treeGrid.setDataProvider(dataProvider);
         return treeGrid;
     }
 
-    private Tree<NamedItem> setupTree() {
-        Tree<NamedItem> tree = new Tree<>();
-        tree.setDataProvider(new PeopleDataProvider());
+    private <T extends NamedItem> Tree<T> setupTree(HierarchicalDataProvider<T, Void> dataProvider) {
+        Tree<T> tree = new Tree<>();
+        tree.setDataProvider(dataProvider);
         tree.setItemCaptionGenerator(NamedItem::getName);
-        tree.setItemIconGenerator(new PeopleIconGenerator());
+        tree.setItemIconGenerator(new PeopleIconGenerator()::apply);
         return tree;
     }
 
@@ -78,8 +133,8 @@ public class TreeUI extends UI {
     public static class MyUIServlet extends VaadinServlet {
     }
 
-    private static ValueProvider<NamedItem, String> ofPerson(ValueProvider<Person, String> personExtractor) {
-        return (NamedItem item) -> {
+    private static <T extends NamedItem> ValueProvider<T, String> ofPerson(ValueProvider<Person, String> personExtractor) {
+        return (T item) -> {
             if (item instanceof Person) {
                 return personExtractor.apply((Person) item);
             } else {
@@ -103,6 +158,15 @@ public class TreeUI extends UI {
                 }
             } else if (p instanceof Department) {
                 return VaadinIcons.GROUP;
+            } else if (p instanceof HierarchyNode) {
+                switch (((HierarchyNode) p).getKind()) {
+                    case HierarchyIndex.PERSON:
+                        return VaadinIcons.USER;
+                    case HierarchyIndex.DEPARTMENT:
+                        return VaadinIcons.GROUP;
+                    default:
+                        return VaadinIcons.OFFICE;
+                }
             } else {
                 return VaadinIcons.OFFICE;
             }
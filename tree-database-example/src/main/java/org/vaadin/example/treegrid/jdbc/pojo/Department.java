@@ -13,7 +13,7 @@ public class Department extends NamedItem {
         this.companyId = companyId;
     }
 
-    private long getCompanyId() {
+    public long getCompanyId() {
         return companyId;
     }
 
@@ -0,0 +1,45 @@
+package org.vaadin.example.treegrid.jdbc.pojo;
+
+/**
+ * POJO for a node of the hierarchy index, of any depth
+ */
+public class HierarchyNode extends NamedItem {
+    private final Long parentId;
+    private final String kind;
+    private final long refId;
+    private final String name;
+
+    public HierarchyNode(long id, Long parentId, String kind, long refId, String name) {
+        super(id);
+        this.parentId = parentId;
+        this.kind = kind;
+        this.refId = refId;
+        this.name = name;
+    }
+
+    /**
+     * @return id of the parent node, null for roots
+     */
+    public Long getParentId() {
+        return parentId;
+    }
+
+    /**
+     * @return type of the indexed entity, e.g. {@code COMPANY}
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * @return id of the indexed entity in its own table
+     */
+    public long getRefId() {
+        return refId;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
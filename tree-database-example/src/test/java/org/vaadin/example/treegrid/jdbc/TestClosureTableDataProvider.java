@@ -0,0 +1,98 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import com.vaadin.data.provider.HierarchicalQuery;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vaadin.example.treegrid.jdbc.pojo.HierarchyNode;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ClosureTableDataProvider over the hierarchy index of the demo database
+ */
+public class TestClosureTableDataProvider {
+
+    private final ClosureTableDataProvider dataProvider = new ClosureTableDataProvider();
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        try (Connection connection = DBEngine.getDataSource().getConnection()) {
+            HierarchyIndex.build(connection);
+        }
+    }
+
+    @Test
+    public void childCountsAgreeWithChildren() {
+        List<HierarchyNode> companies = children(null);
+        assertEquals(readInt("SELECT COUNT(*) FROM company"), companies.size());
+        HierarchyNode company = branch(HierarchyIndex.COMPANY);
+        List<HierarchyNode> departments = children(company);
+        assertEquals(departments.size(), dataProvider.getChildCount(new HierarchicalQuery<>(null, company)));
+        assertTrue(dataProvider.hasChildren(company));
+
+        HierarchyNode department = branch(HierarchyIndex.DEPARTMENT);
+        HierarchyNode person = children(department).get(0);
+        assertEquals(HierarchyIndex.PERSON, person.getKind());
+        assertEquals(0, dataProvider.getChildCount(new HierarchicalQuery<>(null, person)));
+        assertFalse(dataProvider.hasChildren(person));
+    }
+
+    @Test
+    public void subtreeSizeCountsAllLevels() {
+        HierarchyNode company = children(null).get(0);
+        assertEquals(readInt("SELECT COUNT(*) FROM department WHERE company_id = " + company.getRefId())
+                        + readInt("SELECT COUNT(*) FROM people p JOIN department d"
+                        + " ON d.department_id = p.department_id WHERE d.company_id = " + company.getRefId()),
+                dataProvider.getSubtreeSize(company));
+        assertEquals(dataProvider.getSubtreeSize(company), dataProvider.fetchSubtree(company, 2).size());
+        assertEquals(children(company), dataProvider.fetchSubtree(company, 1));
+    }
+
+    @Test
+    public void branchesComeBeforeTheirChildren() {
+        List<HierarchyNode> branches = dataProvider.fetchBranches();
+        assertEquals(readInt("SELECT COUNT(*) FROM company c WHERE EXISTS"
+                        + " (SELECT 1 FROM department d WHERE d.company_id = c.company_id)")
+                        + readInt("SELECT COUNT(*) FROM department d WHERE EXISTS"
+                        + " (SELECT 1 FROM people p WHERE p.department_id = d.department_id)"),
+                branches.size());
+        Set<Long> seen = new HashSet<>();
+        for (HierarchyNode branch : branches) {
+            assertFalse(HierarchyIndex.PERSON.equals(branch.getKind()));
+            assertTrue(branch.getParentId() == null || seen.contains(branch.getParentId()));
+            seen.add(branch.getId());
+        }
+    }
+
+    private HierarchyNode branch(String kind) {
+        return dataProvider.fetchBranches().stream()
+                .filter(branch -> kind.equals(branch.getKind()))
+                .findFirst().get();
+    }
+
+    private List<HierarchyNode> children(HierarchyNode parent) {
+        return dataProvider.fetchChildren(new HierarchicalQuery<>(null, parent)).collect(Collectors.toList());
+    }
+
+    private static int readInt(String sql) {
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Parsing of memory-mapped CSV files by CsvImporter
+ */
+public class TestCsvImporter {
+
+    private static final long LARGE_WINDOW = 1 << 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BasicDataSource dataSource;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:csvimporterdb");
+        dataSource.setUsername("SA");
+        dataSource.setPassword("");
+        connection = dataSource.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE item (id BIGINT PRIMARY KEY, name VARCHAR(100), amount INTEGER)");
+        }
+    }
+
+    @Test
+    public void quotedFields() throws Exception {
+        assertEquals(4, importItems(LARGE_WINDOW,
+                "id,name,amount\n"
+                        + "1,\"Smith, John\",10\n"
+                        + "2,\"Say \"\"hi\"\"\",\n"
+                        + "3,plain,-5\n"
+                        + "4,\"\",7\n"));
+        assertEquals(Arrays.asList("1|Smith, John|10", "2|Say \"hi\"|null", "3|plain|-5", "4||7"),
+                readItems());
+    }
+
+    @Test
+    public void crlfLineEndings() throws Exception {
+        assertEquals(2, importItems(LARGE_WINDOW,
+                "id,name,amount\r\n1,a,1\r\n2,\"b\r\nc\",2\r\n"));
+        assertEquals(Arrays.asList("1|a|1", "2|b\r\nc|2"), readItems());
+    }
+
+    @Test
+    public void lastRowWithoutLineEnd() throws Exception {
+        assertEquals(2, importItems(LARGE_WINDOW, "id,name,amount\n1,a,1\n\n2,b,2"));
+        assertEquals(Arrays.asList("1|a|1", "2|b|2"), readItems());
+    }
+
+    @Test
+    public void rowsCrossingWindows() throws Exception {
+        StringBuilder csv = new StringBuilder("id,name,amount\n");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            csv.append(i).append(",\"n, \"\"").append(i).append("\"\"\",").append(-i).append('\n');
+            expected.add(i + "|n, \"" + i + "\"|" + -i);
+        }
+        // Rows are up to 22 bytes long, most of them cross a window end
+        for (int windowSize : new int[]{22, 23, 32, 4096}) {
+            assertEquals(200, importItems(windowSize, csv.toString()));
+            assertEquals("Window of " + windowSize + " bytes", expected, readItems());
+            execute("DELETE FROM item");
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rowLongerThanWindow() throws Exception {
+        importItems(16, "id,name,amount\n1,\"A name longer than the window\",1\n");
+    }
+
+    @Test
+    public void numbersAtTheLimits() throws Exception {
+        importItems(LARGE_WINDOW,
+                "id,name,amount\n9223372036854775807,max,1\n-9223372036854775808,min,2\n");
+        assertEquals(Arrays.asList("-9223372036854775808|min|2", "9223372036854775807|max|1"),
+                readItems());
+    }
+
+    @Test
+    public void numericOverflow() throws Exception {
+        assertRejected("id,name,amount\n9223372036854775808,too large,1\n");
+        assertRejected("id,name,amount\n-9223372036854775809,too small,1\n");
+        assertRejected("id,name,amount\n99999999999999999999999,far too large,1\n");
+    }
+
+    @Test
+    public void malformedRows() throws Exception {
+        assertRejected("id,name,amount\n1,a\n");
+        assertRejected("id,name,amount\n1x,a,1\n");
+        assertRejected("id,name,amount\n-,a,1\n");
+    }
+
+    private void assertRejected(String csv) throws Exception {
+        try {
+            importItems(LARGE_WINDOW, csv);
+            fail("Rejected: " + csv);
+        } catch (SQLException expected) {
+            // Rows of the file are inserted in batches, none is expected
+        }
+        assertEquals(0, readItems().size());
+    }
+
+    private long importItems(long windowSize, String csv) throws IOException, SQLException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return new CsvImporter(dataSource, windowSize).importFile(connection, "item", file);
+    }
+
+    private List<String> readItems() throws SQLException {
+        List<String> items = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, name, amount FROM item ORDER BY id")) {
+            while (resultSet.next()) {
+                items.add(resultSet.getLong(1) + "|" + resultSet.getString(2) + "|" + resultSet.getObject(3));
+            }
+        }
+        return items;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        execute("DROP TABLE item");
+        connection.close();
+        dataSource.close();
+    }
+}
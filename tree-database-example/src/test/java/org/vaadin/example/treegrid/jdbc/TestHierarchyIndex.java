@@ -0,0 +1,174 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Building the closure table of HierarchyIndex, and rebuilding it after
+ * imports
+ */
+public class TestHierarchyIndex {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BasicDataSource dataSource;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:hierarchydb");
+        dataSource.setUsername("SA");
+        dataSource.setPassword("");
+        new ScriptLoader(dataSource, false).load("db_ddl.sql");
+        connection = dataSource.getConnection();
+        execute("INSERT INTO company VALUES (1, 'Abatz', 'inbox@abatz.com'), (2, 'Katz', 'inbox@katz.com')");
+        execute("INSERT INTO department VALUES (10, 1, 'Sales'), (11, 1, 'Support'), (20, 2, 'Legal')");
+        execute("INSERT INTO people VALUES (100, 10, 'Ann', 'Lee', NULL, 'Female'),"
+                + " (101, 10, 'Bob', NULL, NULL, 'Male'),"
+                + " (102, 11, NULL, 'Cho', NULL, NULL),"
+                + " (103, 20, 'Dan', 'Roe', NULL, 'Male')");
+    }
+
+    @Test
+    public void buildIndexesAllNodes() throws SQLException {
+        assertEquals(9, HierarchyIndex.build(connection));
+        // Every node with itself and each of its ancestors
+        assertEquals(2 * 1 + 3 * 2 + 4 * 3, readInt("SELECT COUNT(*) FROM org_closure"));
+        assertEquals(5, subtreeSize(HierarchyIndex.COMPANY, 1));
+        assertEquals(2, subtreeSize(HierarchyIndex.DEPARTMENT, 10));
+        assertEquals(0, subtreeSize(HierarchyIndex.PERSON, 100));
+        assertEquals(2, readInt("SELECT MAX(depth) FROM org_closure"));
+    }
+
+    @Test
+    public void namesWithMissingPartsAreKept() throws SQLException {
+        HierarchyIndex.build(connection);
+        assertEquals("Ann Lee", name(100));
+        assertEquals("Bob", name(101));
+        assertEquals("Cho", name(102));
+    }
+
+    @Test
+    public void rebuildReplacesContent() throws SQLException {
+        HierarchyIndex.build(connection);
+        Set<String> closure = closure();
+        assertEquals(9, HierarchyIndex.build(connection));
+        assertEquals(closure, closure());
+    }
+
+    @Test
+    public void importsRebuildAnExistingIndex() throws Exception {
+        CsvImporter importer = new CsvImporter(dataSource);
+        Path directory = folder.newFolder().toPath();
+        write(directory.resolve("department.csv"), "department_id,company_id,department_name\n21,2,Research\n");
+        write(directory.resolve("people.csv"), "id,department_id,first_name,last_name,email,gender\n"
+                + "104,21,Eve,Poe,,Female\n");
+        importer.importDirectory(directory);
+        assertFalse(HierarchyIndex.exists(connection));
+
+        HierarchyIndex.build(connection);
+        write(directory.resolve("department.csv"), "department_id,company_id,department_name\n22,2,Archive\n");
+        write(directory.resolve("people.csv"), "id,department_id,first_name,last_name,email,gender\n"
+                + "105,22,Fay,,,Female\n");
+        importer.importDirectory(directory);
+        assertEquals("Fay", name(105));
+        assertTrue(closure().containsAll(Arrays.asList(
+                "COMPANY2>DEPARTMENT21@1", "COMPANY2>PERSON104@2", "COMPANY2>PERSON105@2")));
+        // Legal, Research and Archive with a person each
+        assertEquals(6, subtreeSize(HierarchyIndex.COMPANY, 2));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return closure rows by the kinds and entity ids of their nodes, which
+     * unlike node ids survive a rebuild
+     */
+    private Set<String> closure() throws SQLException {
+        Set<String> rows = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT a.kind, a.ref_id, d.kind, d.ref_id, c.depth FROM org_closure c"
+                             + " JOIN org_node a ON a.node_id = c.ancestor"
+                             + " JOIN org_node d ON d.node_id = c.descendant")) {
+            while (resultSet.next()) {
+                rows.add(resultSet.getString(1) + resultSet.getLong(2) + ">"
+                        + resultSet.getString(3) + resultSet.getLong(4) + "@" + resultSet.getInt(5));
+            }
+        }
+        return rows;
+    }
+
+    private long nodeId(String kind, long refId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT node_id FROM org_node WHERE kind = ? AND ref_id = ?")) {
+            statement.setString(1, kind);
+            statement.setLong(2, refId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    private int subtreeSize(String kind, long refId) throws SQLException {
+        return readInt("SELECT COUNT(*) FROM org_closure WHERE depth > 0 AND ancestor = " + nodeId(kind, refId));
+    }
+
+    private String name(long personId) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT name FROM org_node"
+                     + " WHERE kind = '" + HierarchyIndex.PERSON + "' AND ref_id = " + personId)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private int readInt(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA PUBLIC CASCADE");
+        }
+        connection.close();
+        dataSource.close();
+    }
+}
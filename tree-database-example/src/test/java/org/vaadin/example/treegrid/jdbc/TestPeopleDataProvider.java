@@ -0,0 +1,194 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import com.vaadin.data.provider.HierarchicalQuery;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.util.CurrentInstance;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vaadin.example.treegrid.jdbc.pojo.Department;
+import org.vaadin.example.treegrid.jdbc.pojo.NamedItem;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Children pages of PeopleDataProvider, continued by keyset or skipped by
+ * offset, match a plain OFFSET query. Children of parents expanded within a
+ * request are read together.
+ */
+public class TestPeopleDataProvider {
+
+    private static final long COMPANY_ID = 90_000;
+    private static final long DEPARTMENT_ID = 90_000;
+    private static final int PEOPLE = 1000;
+    private static final int PAGE = 50;
+    private static final long SMALL_DEPARTMENT_ID = 90_001;
+    private static final long OTHER_DEPARTMENT_ID = 90_002;
+
+    private static final Department DEPARTMENT = new Department(DEPARTMENT_ID, COMPANY_ID, "Paged");
+
+    private PeopleDataProvider dataProvider;
+
+    @BeforeClass
+    public static void setUpAll() throws SQLException {
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO company VALUES (" + COMPANY_ID + ", 'Paging', 'inbox@paging.com')");
+            statement.executeUpdate("INSERT INTO department VALUES (" + DEPARTMENT_ID + ", " + COMPANY_ID + ", 'Paged')");
+            // Ids with gaps, inserted out of order
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < PEOPLE; i++) {
+                ids.add(100_000L + 3 * i + i % 2);
+            }
+            Collections.shuffle(ids, new Random(42));
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO people VALUES (?, ?, 'First', 'Last', 'person@paging.com', 'Female')")) {
+                for (long id : ids) {
+                    insert.setLong(1, id);
+                    insert.setLong(2, DEPARTMENT_ID);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            statement.executeUpdate("INSERT INTO department VALUES (" + SMALL_DEPARTMENT_ID + ", " + COMPANY_ID
+                    + ", 'Small'), (" + OTHER_DEPARTMENT_ID + ", " + COMPANY_ID + ", 'Other')");
+            statement.executeUpdate("INSERT INTO people VALUES"
+                    + " (200000, " + SMALL_DEPARTMENT_ID + ", 'Ann', 'Lee', NULL, 'Female'),"
+                    + " (200001, " + SMALL_DEPARTMENT_ID + ", 'Bob', 'Lee', NULL, 'Male'),"
+                    + " (200002, " + OTHER_DEPARTMENT_ID + ", 'Cho', 'Roe', NULL, 'Female'),"
+                    + " (200003, " + OTHER_DEPARTMENT_ID + ", 'Dan', 'Roe', NULL, 'Male')");
+        }
+    }
+
+    @Before
+    public void setUp() {
+        dataProvider = new PeopleDataProvider();
+    }
+
+    @Test
+    public void pagesForward() {
+        for (int offset = 0; offset < PEOPLE + PAGE; offset += PAGE) {
+            assertPage(offset, PAGE);
+        }
+    }
+
+    @Test
+    public void pagesOfChangingSizesContinue() {
+        assertPage(0, PAGE);
+        assertPage(PAGE, 30);
+        assertPage(PAGE + 30, 70);
+        assertPage(PAGE + 100, 1);
+    }
+
+    @Test
+    public void jumpsBack() {
+        assertPage(0, PAGE);
+        assertPage(PAGE, PAGE);
+        assertPage(2 * PAGE, PAGE);
+        assertPage(PAGE, PAGE);
+        assertPage(0, PAGE);
+        // The page after a jump back continues from the jumped-to page
+        assertPage(PAGE, PAGE);
+    }
+
+    @Test
+    public void jumpsToDeepOffset() {
+        assertPage(0, PAGE);
+        assertPage(900, PAGE);
+        assertPage(950, PAGE);
+        assertPage(PEOPLE - 10, PAGE);
+        assertPage(300, PAGE);
+    }
+
+    @Test
+    public void rootLevelIsPagedToo() {
+        List<Long> companyIds = readIds("SELECT company_id FROM company ORDER BY company_id");
+        for (int offset = 0; offset < companyIds.size(); offset += 3) {
+            List<NamedItem> page = dataProvider.fetchChildren(new HierarchicalQuery<>(offset, 3,
+                    Collections.emptyList(), null, null, null)).collect(Collectors.toList());
+            assertEquals(companyIds.subList(offset, Math.min(offset + 3, companyIds.size())), ids(page));
+        }
+    }
+
+    @Test
+    public void expandedParentsAreReadTogether() throws SQLException {
+        Department small = new Department(SMALL_DEPARTMENT_ID, COMPANY_ID, "Small");
+        Department other = new Department(OTHER_DEPARTMENT_ID, COMPANY_ID, "Other");
+        CurrentInstance.set(VaadinRequest.class, (VaadinRequest) Proxy.newProxyInstance(
+                VaadinRequest.class.getClassLoader(), new Class<?>[]{VaadinRequest.class},
+                (proxy, method, args) -> null));
+        try {
+            // Counted when expanded
+            assertEquals(2, dataProvider.getChildCount(new HierarchicalQuery<>(null, small)));
+            assertEquals(2, dataProvider.getChildCount(new HierarchicalQuery<>(null, other)));
+            assertEquals(Arrays.asList(200_000L, 200_001L), ids(children(small)));
+            // Already read with the children of the first department
+            try (Connection connection = DBEngine.getDataSource().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM people WHERE department_id = " + OTHER_DEPARTMENT_ID);
+            }
+            assertEquals(Arrays.asList(200_002L, 200_003L), ids(children(other)));
+        } finally {
+            CurrentInstance.clearAll();
+        }
+        // Outside of the request the children are read again
+        assertEquals(Collections.emptyList(), ids(children(other)));
+    }
+
+    private List<NamedItem> children(Department department) {
+        return dataProvider.fetchChildren(new HierarchicalQuery<>(null, department)).collect(Collectors.toList());
+    }
+
+    private void assertPage(int offset, int limit) {
+        List<NamedItem> page = dataProvider.fetchChildren(new HierarchicalQuery<>(offset, limit,
+                Collections.emptyList(), null, null, DEPARTMENT)).collect(Collectors.toList());
+        assertEquals("Page at " + offset,
+                readIds("SELECT id FROM people WHERE department_id = " + DEPARTMENT_ID + " ORDER BY id"
+                        + " OFFSET " + offset + " ROWS FETCH NEXT " + limit + " ROWS ONLY"),
+                ids(page));
+    }
+
+    private static List<Long> ids(List<NamedItem> items) {
+        return items.stream().map(NamedItem::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> readIds(String sql) {
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            List<Long> ids = new ArrayList<>();
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong(1));
+            }
+            return ids;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownAll() throws SQLException {
+        try (Connection connection = DBEngine.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM people WHERE department_id IN ("
+                    + DEPARTMENT_ID + ", " + SMALL_DEPARTMENT_ID + ", " + OTHER_DEPARTMENT_ID + ")");
+            statement.executeUpdate("DELETE FROM department WHERE department_id IN ("
+                    + DEPARTMENT_ID + ", " + SMALL_DEPARTMENT_ID + ", " + OTHER_DEPARTMENT_ID + ")");
+            statement.executeUpdate("DELETE FROM company WHERE company_id = " + COMPANY_ID);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.vaadin.example.treegrid.jdbc;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Splitting of SQL scripts into statements, and loading them
+ */
+public class TestScriptLoader {
+
+    private BasicDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:scriptloaderdb");
+        dataSource.setUsername("SA");
+        dataSource.setPassword("");
+    }
+
+    @Test
+    public void splitsAtSemicolons() throws IOException {
+        assertEquals(Arrays.asList("CREATE TABLE a (id INTEGER)", "DROP TABLE a"),
+                read("CREATE TABLE a (id INTEGER);\n  DROP TABLE a ;"));
+    }
+
+    @Test
+    public void lastStatementNeedsNoSemicolon() throws IOException {
+        assertEquals(Arrays.asList("SELECT 1", "SELECT 2"), read("SELECT 1; SELECT 2\n"));
+    }
+
+    @Test
+    public void emptyStatementsAreSkipped() throws IOException {
+        assertEquals(Collections.singletonList("SELECT 1"), read(";;\n SELECT 1;  ;\n"));
+        assertEquals(Collections.emptyList(), read(""));
+    }
+
+    @Test
+    public void semicolonsInQuotesAreKept() throws IOException {
+        assertEquals(Arrays.asList("INSERT INTO a VALUES ('x;y')", "SELECT \"odd;name\" FROM a"),
+                read("INSERT INTO a VALUES ('x;y'); SELECT \"odd;name\" FROM a;"));
+    }
+
+    @Test
+    public void doubledQuotesAreEscapes() throws IOException {
+        assertEquals(Arrays.asList("INSERT INTO a VALUES ('it''s; fine')", "SELECT 1"),
+                read("INSERT INTO a VALUES ('it''s; fine'); SELECT 1;"));
+    }
+
+    @Test
+    public void commentsAreDropped() throws IOException {
+        assertEquals(Arrays.asList("SELECT 1", "SELECT '--not a comment'", "SELECT \n2"),
+                read("-- header; with a semicolon\nSELECT 1; -- trailing\n"
+                        + "SELECT '--not a comment';\nSELECT -- inline\n2;\n-- last line"));
+    }
+
+    @Test
+    public void blockCommentsAreDropped() throws IOException {
+        assertEquals(Arrays.asList("SELECT 1", "SELECT   2", "SELECT '/*not a comment*/'", "SELECT 3"),
+                read("/* header; with a semicolon\n over lines */SELECT 1;"
+                        + "SELECT /* inline; */ 2; SELECT '/*not a comment*/';"
+                        + "/*/ still; a comment -- */ SELECT/**/3;"));
+    }
+
+    @Test
+    public void statementsCrossBufferBoundaries() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 3 * 8192; i++) {
+            longText.append(i % 10 == 0 ? ';' : 'x');
+        }
+        String insert = "INSERT INTO a VALUES ('" + longText + "')";
+        assertEquals(Arrays.asList(insert, "SELECT 1"), read(insert + ";\nSELECT 1;"));
+    }
+
+    @Test
+    public void insertsAreAttributedToTheirTable() {
+        assertEquals("PEOPLE", ScriptLoader.tableOf("insert  into people VALUES (1)"));
+        assertEquals("PUBLIC.COMPANY", ScriptLoader.tableOf("INSERT INTO public.company\nVALUES (1)"));
+        assertNull(ScriptLoader.tableOf("UPDATE people SET id = 1"));
+        assertNull(ScriptLoader.tableOf("SELECT 'INSERT INTO people'"));
+    }
+
+    @Test
+    public void sequentialLoad() throws SQLException {
+        assertEquals(7, new ScriptLoader(dataSource, false).load("test_load.sql"));
+        assertLoaded();
+    }
+
+    @Test
+    public void parallelLoad() throws SQLException {
+        assertEquals(7, new ScriptLoader(dataSource, true).load("test_load.sql"));
+        assertLoaded();
+    }
+
+    private void assertLoaded() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT name FROM parent ORDER BY id")) {
+                List<String> names = new ArrayList<>();
+                while (resultSet.next()) {
+                    names.add(resultSet.getString(1));
+                }
+                assertEquals(Arrays.asList("First", "Renamed"), names);
+            }
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT name FROM child WHERE id = 2")) {
+                resultSet.next();
+                assertEquals("Second child; with a semicolon", resultSet.getString(1));
+            }
+            try {
+                statement.executeUpdate("INSERT INTO child VALUES (3, 3, 'Orphan')");
+                fail("Referential integrity is checked again after loading");
+            } catch (SQLException expected) {
+                // No parent 3
+            }
+        }
+    }
+
+    private static List<String> read(String script) throws IOException {
+        List<String> statements = new ArrayList<>();
+        ScriptLoader.readStatements(new StringReader(script), statements::add);
+        return statements;
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA PUBLIC CASCADE");
+        }
+        dataSource.close();
+    }
+}
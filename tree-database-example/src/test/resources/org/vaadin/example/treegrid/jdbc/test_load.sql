@@ -0,0 +1,11 @@
+-- In parallel mode the tables are loaded concurrently, children may be
+-- inserted before their parents
+CREATE TABLE parent (id INTEGER PRIMARY KEY, name VARCHAR(50));
+CREATE TABLE child (id INTEGER PRIMARY KEY, parent_id INTEGER NOT NULL,
+    name VARCHAR(50), FOREIGN KEY (parent_id) REFERENCES parent (id));
+INSERT INTO parent VALUES (1, 'First');
+INSERT INTO parent VALUES (2, 'Second');
+INSERT INTO child VALUES (1, 1, 'First child');
+INSERT INTO child VALUES (2, 2, 'Second child; with a semicolon');
+-- Statements after the last INSERTs
+UPDATE parent SET name = 'Renamed' WHERE id = 2;